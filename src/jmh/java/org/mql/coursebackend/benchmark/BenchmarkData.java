@@ -0,0 +1,39 @@
+package org.mql.coursebackend.benchmark;
+
+import java.util.Random;
+
+final class BenchmarkData {
+
+    private static final String[] WORDS = {
+            "gradient", "descent", "matrix", "vector", "lecture", "exam", "proof", "theorem", "the", "of",
+            "and", "a", "function", "variable", "ArrayList", "max_depth", "recursion", "graph", "tree", "node",
+            "complexity", "algorithm", "database", "index", "query", "transaction", "network", "protocol"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Word salad of about {@code chars} characters with sentence and paragraph breaks.
+     */
+    static String text(Random random, int chars) {
+        StringBuilder text = new StringBuilder(chars + 32);
+        int sentence = 0;
+        while (text.length() < chars) {
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+            if (++sentence % 12 == 0) {
+                text.append(sentence % 96 == 0 ? ".\n\n" : ". ");
+            } else {
+                text.append(' ');
+            }
+        }
+        return text.toString();
+    }
+
+    static float[] vector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,43 @@
+package org.mql.coursebackend.benchmark;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.mql.coursebackend.service.IngestionService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splitting plus the per-chunk metadata copy done by {@code IngestionService.ingest},
+ * for documents of roughly 20, 100 and 300 pages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChunkingBenchmark {
+
+    @Param({"20", "100", "300"})
+    public int pages;
+
+    private Document document;
+    private final DocumentSplitter splitter = DocumentSplitters.recursive(1000, 100);
+
+    @Setup
+    public void setUp() {
+        document = Document.from(BenchmarkData.text(new Random(42), pages * 3000), Metadata.from("filename",
+                "course.pdf"));
+    }
+
+    @Benchmark
+    public List<TextSegment> splitAndNumber() {
+        return IngestionService.numberChunks(splitter.split(document));
+    }
+}
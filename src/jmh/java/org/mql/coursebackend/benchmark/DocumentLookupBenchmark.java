@@ -0,0 +1,100 @@
+package org.mql.coursebackend.benchmark;
+
+import org.mql.coursebackend.dto.DocumentInfo;
+import org.mql.coursebackend.entity.CourseDocument;
+import org.mql.coursebackend.repository.CourseDocumentRepository;
+import org.mql.coursebackend.service.DocumentStorageService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-chat document lookups against the H2 documents table, as done on every
+ * listing and upload limit check. Five documents per chat.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentLookupBenchmark {
+
+    private static final int DOCUMENTS_PER_CHAT = 5;
+
+    @Param({"10000", "100000"})
+    public int documents;
+
+    private ConfigurableApplicationContext context;
+    private DocumentStorageService documentStorageService;
+    private int chats;
+
+    @Configuration
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            TransactionAutoConfiguration.class, JdbcTemplateAutoConfiguration.class})
+    @EntityScan(basePackageClasses = CourseDocument.class)
+    @EnableJpaRepositories(basePackageClasses = CourseDocumentRepository.class)
+    @Import(DocumentStorageService.class)
+    static class Config {
+    }
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Config.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.datasource.url=jdbc:h2:mem:bench-" + documents + ";DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.open-in-view=false",
+                        "logging.level.root=WARN")
+                .run();
+        documentStorageService = context.getBean(DocumentStorageService.class);
+
+        chats = documents / DOCUMENTS_PER_CHAT;
+        List<Object[]> rows = new ArrayList<>(documents);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < documents; i++) {
+            rows.add(new Object[] {"doc-" + i, "course-" + i + ".pdf", 1_000_000L, now, chatId(i % chats), 300});
+        }
+        context.getBean(JdbcTemplate.class).batchUpdate(
+                "insert into documents (id, filename, file_size, uploaded_at, chat_id, total_chunks) "
+                        + "values (?, ?, ?, ?, ?, ?)",
+                rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<DocumentInfo> getAllDocuments() {
+        return documentStorageService.getAllDocuments(chatId(ThreadLocalRandom.current().nextInt(chats)));
+    }
+
+    @Benchmark
+    public long countDocuments() {
+        return documentStorageService.countDocuments(chatId(ThreadLocalRandom.current().nextInt(chats)));
+    }
+
+    private static String chatId(int chat) {
+        return String.format("%036d", chat);
+    }
+}
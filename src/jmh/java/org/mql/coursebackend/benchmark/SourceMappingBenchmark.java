@@ -0,0 +1,54 @@
+package org.mql.coursebackend.benchmark;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.mql.coursebackend.dto.ChatResponse;
+import org.mql.coursebackend.service.SourceDocumentMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Source mapping and negative-answer detection, run once per chat request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SourceMappingBenchmark {
+
+    @Param({"5", "20"})
+    public int sources;
+
+    private List<Content> contents;
+    private String answer;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        contents = new ArrayList<>(sources);
+        for (int i = 0; i < sources; i++) {
+            Metadata metadata = Metadata.from(Map.of("filename", "course-" + i + ".pdf",
+                    "chunk_index", String.valueOf(i), "chatId", "chat"));
+            contents.add(Content.from(TextSegment.from(BenchmarkData.text(random, 1000), metadata)));
+        }
+        answer = BenchmarkData.text(random, 1500);
+    }
+
+    @Benchmark
+    public List<ChatResponse.SourceDocument> toSourceDocuments() {
+        return SourceDocumentMapper.toSourceDocuments(contents, answer);
+    }
+
+    @Benchmark
+    public boolean isAnswerNegative() {
+        return SourceDocumentMapper.isAnswerNegative(answer);
+    }
+}
@@ -0,0 +1,63 @@
+package org.mql.coursebackend.benchmark;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import org.mql.coursebackend.rag.EmbeddedVectorStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Cosine top-k over one chat's partition of the embedded vector store, at the
+ * dimensions of common embedding models.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VectorSearchBenchmark {
+
+    @Param({"768", "1024", "1536"})
+    public int dimension;
+
+    @Param({"1000", "10000"})
+    public int chunks;
+
+    private EmbeddedVectorStore store;
+    private EmbeddingSearchRequest request;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        store = new EmbeddedVectorStore("");
+        List<Embedding> embeddings = new ArrayList<>(chunks);
+        List<TextSegment> segments = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            embeddings.add(Embedding.from(BenchmarkData.vector(random, dimension)));
+            segments.add(TextSegment.from("chunk " + i, Metadata.from("chatId", "chat")));
+        }
+        store.addAll(embeddings, segments);
+
+        request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(BenchmarkData.vector(random, dimension)))
+                .maxResults(20)
+                .minScore(0.0)
+                .filter(metadataKey("chatId").isEqualTo("chat"))
+                .build();
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> topK() {
+        return store.search(request);
+    }
+}
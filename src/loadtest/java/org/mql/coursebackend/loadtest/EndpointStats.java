@@ -0,0 +1,55 @@
+package org.mql.coursebackend.loadtest;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and outcomes of one endpoint during the measured window.
+ */
+class EndpointStats {
+
+    private final ConcurrentLinkedQueue<Long> latenciesMicros = new ConcurrentLinkedQueue<>();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    void record(long latencyNanos, boolean success) {
+        latenciesMicros.add(latencyNanos / 1000);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    // Requests not sent because the in-flight limit was reached
+    void drop() {
+        dropped.increment();
+    }
+
+    Map<String, Object> summary(double windowSeconds) {
+        long[] sorted = latenciesMicros.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        long count = sorted.length;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requests", count);
+        summary.put("errors", errors.sum());
+        summary.put("dropped", dropped.sum());
+        summary.put("errorRate", count == 0 ? 0.0 : (double) errors.sum() / count);
+        summary.put("throughputPerSecond", count / windowSeconds);
+        summary.put("p50Millis", percentile(sorted, 0.50));
+        summary.put("p95Millis", percentile(sorted, 0.95));
+        summary.put("p99Millis", percentile(sorted, 0.99));
+        summary.put("maxMillis", count == 0 ? 0.0 : sorted[sorted.length - 1] / 1000.0);
+        return summary;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0.0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+    }
+}
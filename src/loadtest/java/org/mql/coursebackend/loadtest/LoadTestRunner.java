@@ -0,0 +1,344 @@
+package org.mql.coursebackend.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.mql.coursebackend.CourseRagBackendApplication;
+import org.mql.coursebackend.support.StubChromaServer;
+import org.mql.coursebackend.support.StubOpenAiServer;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Starts the application against in-process OpenAI and Chroma stand-ins, drives
+ * chat, upload and history traffic at fixed rates (open model: requests are
+ * issued on schedule whether or not earlier ones have finished) and writes a
+ * JSON report per endpoint.
+ * <p>
+ * Run with {@code mvn -Ploadtest test-compile exec:java}. Everything is
+ * configured through {@code -Dloadtest.*} system properties; see {@link #main}.
+ * To check that thousands of slow chats can be in flight at once on virtual
+ * threads, run on JDK 21 with something like
+ * {@code mvn -Pjava21,loadtest test-compile exec:java -Dloadtest.virtual-threads=true
+ * -Dloadtest.model.first-token-ms=5000 -Dloadtest.chat.rate=500 -Dloadtest.max-in-flight=5000}
+ * and compare {@code peakInFlight} and the chat error rate against a run
+ * without virtual threads.
+ * <p>
+ * The report also carries p50/p99 per {@code course.rag.stage} timer, measured
+ * inside the application. To compare the embedded vector store with Chroma, run
+ * once with {@code -Dloadtest.vector-store=embedded} and once with the default
+ * {@code chroma}, and compare {@code stages.vector_search}. The Chroma stand-in
+ * answers after a fixed {@code loadtest.chroma.latency-ms}, so against it the
+ * comparison only shows the embedded store's own cost; point
+ * {@code -Dloadtest.chroma.url} at a real Chroma server to compare the two on
+ * the same corpus.
+ */
+public class LoadTestRunner {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final ExecutorService clientExecutor = Executors.newCachedThreadPool();
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(clientExecutor)
+            .build();
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private volatile int peakInFlight;
+    private final List<String> chatIds = new ArrayList<>();
+    private volatile boolean measuring;
+    private String baseUrl;
+
+    private LoadTestRunner(int maxInFlight) {
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        for (String endpoint : List.of("chat", "chat_stream", "upload", "history")) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Object> config = new LinkedHashMap<>();
+        long firstTokenMillis = (long) setting(config, "loadtest.model.first-token-ms", 300);
+        double tokensPerSecond = setting(config, "loadtest.model.tokens-per-second", 50);
+        int answerTokens = (int) setting(config, "loadtest.model.answer-tokens", 80);
+        long embeddingMillis = (long) setting(config, "loadtest.embedding.latency-ms", 20);
+        int dimension = (int) setting(config, "loadtest.embedding.dimension", 384);
+        long chromaMillis = (long) setting(config, "loadtest.chroma.latency-ms", 2);
+        double chatRate = setting(config, "loadtest.chat.rate", 5);
+        double streamRate = setting(config, "loadtest.chat-stream.rate", 2);
+        double uploadRate = setting(config, "loadtest.upload.rate", 0.2);
+        double historyRate = setting(config, "loadtest.history.rate", 10);
+        int chats = (int) setting(config, "loadtest.chats", 20);
+        long warmupSeconds = (long) setting(config, "loadtest.warmup-seconds", 10);
+        long durationSeconds = (long) setting(config, "loadtest.duration-seconds", 60);
+        int maxInFlight = (int) setting(config, "loadtest.max-in-flight", 2000);
+        boolean virtualThreads = Boolean.getBoolean("loadtest.virtual-threads");
+        config.put("loadtest.virtual-threads", virtualThreads);
+        boolean writeBehind = Boolean.getBoolean("loadtest.write-behind");
+        config.put("loadtest.write-behind", writeBehind);
+        String vectorStore = System.getProperty("loadtest.vector-store", "chroma");
+        config.put("loadtest.vector-store", vectorStore);
+        String chromaUrl = System.getProperty("loadtest.chroma.url");
+        config.put("loadtest.chroma.url", chromaUrl != null ? chromaUrl : "stub");
+        String reportPath = System.getProperty("loadtest.report", "target/loadtest-report.json");
+
+        File workDirectory = new File("target/loadtest-" + UUID.randomUUID());
+        try (StubOpenAiServer openAi = new StubOpenAiServer(firstTokenMillis, tokensPerSecond, answerTokens,
+                embeddingMillis, dimension);
+                // No stand-in when a real Chroma server is given
+                StubChromaServer chroma = chromaUrl == null ? new StubChromaServer(chromaMillis) : null) {
+            ConfigurableApplicationContext app = startApplication(openAi,
+                    chroma != null ? chroma.baseUrl() : chromaUrl, workDirectory, virtualThreads,
+                    writeBehind, vectorStore, durationSeconds);
+            try {
+                LoadTestRunner runner = new LoadTestRunner(maxInFlight);
+                runner.baseUrl = "http://localhost:" + app.getEnvironment().getProperty("local.server.port");
+                runner.seed(chats);
+                Map<String, Object> results = runner.drive(chatRate, streamRate, uploadRate, historyRate,
+                        warmupSeconds, durationSeconds);
+
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("timestamp", Instant.now().toString());
+                report.put("config", config);
+                report.put("endpoints", results);
+                report.put("stages", stages(app.getBean(MeterRegistry.class)));
+                report.put("peakInFlight", runner.peakInFlight);
+                File reportFile = new File(reportPath);
+                if (reportFile.getAbsoluteFile().getParentFile() != null) {
+                    reportFile.getAbsoluteFile().getParentFile().mkdirs();
+                }
+                runner.objectMapper.writeValue(reportFile, report);
+                System.out.println(runner.objectMapper.writeValueAsString(report));
+                System.out.println("Report written to " + reportFile.getAbsolutePath());
+                runner.clientExecutor.shutdownNow();
+            } finally {
+                app.close();
+            }
+        }
+    }
+
+    private static double setting(Map<String, Object> config, String key, double defaultValue) {
+        double value = Double.parseDouble(System.getProperty(key, String.valueOf(defaultValue)));
+        config.put(key, value);
+        return value;
+    }
+
+    private static ConfigurableApplicationContext startApplication(StubOpenAiServer openAi, String chromaUrl,
+            File workDirectory, boolean virtualThreads, boolean writeBehind, String vectorStore,
+            long durationSeconds) {
+        String work = workDirectory.getPath();
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("langchain4j.openai.base-url", openAi.baseUrl());
+        properties.put("langchain4j.openai.api-key", "stub");
+        properties.put("langchain4j.openai.embedding-model.model-name", "text-embedding-3-small");
+        properties.put("langchain4j.openai.chat-model.model-name", "gpt-4o-mini");
+        properties.put("langchain4j.openai.chat-model.temperature", "0.0");
+        properties.put("langchain4j.chroma.embedding-store.base-url", chromaUrl);
+        properties.put("course.rag.vector-store", vectorStore);
+        properties.put("course.rag.system-prompt", "You are a course assistant. Answer from the provided documents.");
+        properties.put("spring.datasource.url", "jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        properties.put("course.rag.embedded-store.file", work + "/embedded-vectors.bin");
+        properties.put("course.rag.lexical-index.file", work + "/lexical-index.bin");
+        properties.put("course.rag.ingestion.upload-directory", work + "/uploads");
+        properties.put("course.rag.recovery.on-startup", "false");
+        // Only takes effect on Java 21 (mvn -Pjava21,loadtest ...)
+        properties.put("spring.threads.virtual.enabled", String.valueOf(virtualThreads));
+        properties.put("course.rag.persistence.write-behind.enabled", String.valueOf(writeBehind));
+        // Client-side percentiles per stage over roughly the measured window
+        properties.put("management.metrics.distribution.percentiles.course.rag.stage", "0.5,0.99");
+        properties.put("management.metrics.distribution.expiry.course.rag.stage", durationSeconds + "s");
+        properties.put("management.metrics.distribution.buffer-length.course.rag.stage", "1");
+        properties.put("logging.level.root", "WARN");
+        properties.put("logging.level.org.mql.coursebackend", "WARN");
+
+        SpringApplication application = new SpringApplication(CourseRagBackendApplication.class);
+        // Same defaults as the real entry point, then the load-test overrides
+        Map<String, Object> defaults = new LinkedHashMap<>(CourseRagBackendApplication.defaultProperties());
+        defaults.putAll(properties);
+        application.setDefaultProperties(defaults);
+        return application.run();
+    }
+
+    private static Map<String, Object> stages(MeterRegistry meterRegistry) {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        for (Timer timer : meterRegistry.find("course.rag.stage").timers()) {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", timer.count());
+            for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+                summary.put(value.percentile() == 0.5 ? "p50Millis" : "p99Millis",
+                        value.value(TimeUnit.MILLISECONDS));
+            }
+            stages.put(timer.getId().getTag("stage"), summary);
+        }
+        return stages;
+    }
+
+    private void seed(int chats) throws IOException, InterruptedException {
+        for (int i = 0; i < chats; i++) {
+            HttpResponse<String> created = httpClient.send(post("/api/chat/new", HttpRequest.BodyPublishers.noBody())
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            String chatId = objectMapper.readTree(created.body()).path("id").asText();
+            chatIds.add(chatId);
+            HttpResponse<String> uploaded = httpClient.send(upload(chatId).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            if (uploaded.statusCode() != 200) {
+                throw new IllegalStateException("Seeding upload failed: " + uploaded.body());
+            }
+        }
+    }
+
+    private Map<String, Object> drive(double chatRate, double streamRate, double uploadRate, double historyRate,
+            long warmupSeconds, long durationSeconds) throws InterruptedException {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+        schedule(scheduler, chatRate, "chat", () -> post("/api/chat?chatId=" + randomChat(),
+                HttpRequest.BodyPublishers.ofString(question())));
+        schedule(scheduler, streamRate, "chat_stream", () -> post("/api/chat/stream?chatId=" + randomChat(),
+                HttpRequest.BodyPublishers.ofString(question())));
+        schedule(scheduler, historyRate, "history", () -> HttpRequest.newBuilder(
+                URI.create(baseUrl + "/api/chat/" + randomChat() + "/history")).GET());
+        // Each upload goes to a fresh chat so the per-chat document limit is never hit
+        schedule(scheduler, uploadRate, "upload", () -> upload(UUID.randomUUID().toString()));
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+        measuring = false;
+        double window = (System.nanoTime() - start) / 1e9;
+        scheduler.shutdownNow();
+
+        Map<String, Object> results = new LinkedHashMap<>();
+        stats.forEach((endpoint, endpointStats) -> results.put(endpoint, endpointStats.summary(window)));
+        return results;
+    }
+
+    private void schedule(ScheduledExecutorService scheduler, double ratePerSecond, String endpoint,
+            Supplier<HttpRequest.Builder> request) {
+        if (ratePerSecond <= 0) {
+            return;
+        }
+        long periodMicros = (long) (1_000_000 / ratePerSecond);
+        scheduler.scheduleAtFixedRate(() -> send(endpoint, request.get().build()), periodMicros, periodMicros,
+                TimeUnit.MICROSECONDS);
+    }
+
+    private void send(String endpoint, HttpRequest request) {
+        EndpointStats endpointStats = stats.get(endpoint);
+        if (!inFlight.tryAcquire()) {
+            if (measuring) {
+                endpointStats.drop();
+            }
+            return;
+        }
+        int current = maxInFlight - inFlight.availablePermits();
+        if (current > peakInFlight) {
+            // Racy, but an approximate peak is all the report needs
+            peakInFlight = current;
+        }
+        boolean counted = measuring;
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> response = httpClient.sendAsync(request,
+                HttpResponse.BodyHandlers.ofString());
+        response.whenComplete((result, error) -> {
+            inFlight.release();
+            if (counted) {
+                endpointStats.record(System.nanoTime() - start, error == null && isSuccess(endpoint, result));
+            }
+        });
+    }
+
+    private boolean isSuccess(String endpoint, HttpResponse<String> response) {
+        if (response.statusCode() / 100 != 2) {
+            return false;
+        }
+        // Chat errors are reported in the body with a 200 status
+        if ("chat".equals(endpoint)) {
+            try {
+                JsonNode body = objectMapper.readTree(response.body());
+                return !body.path("answer").asText().startsWith("I apologize, but I encountered an error");
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        if ("chat_stream".equals(endpoint)) {
+            return !response.body().contains("event:error");
+        }
+        return true;
+    }
+
+    private HttpRequest.Builder post(String path, HttpRequest.BodyPublisher body) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(Duration.ofMinutes(3))
+                .header("Content-Type", "text/plain")
+                .POST(body);
+    }
+
+    private HttpRequest.Builder upload(String chatId) {
+        String boundary = "----loadtest" + UUID.randomUUID();
+        String body = "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"lecture.txt\"\r\n"
+                + "Content-Type: text/plain\r\n\r\n"
+                + lecture(new Random(chatId.hashCode()), 40_000) + "\r\n"
+                + "--" + boundary + "--\r\n";
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/documents?chatId="
+                        + URLEncoder.encode(chatId, StandardCharsets.UTF_8)))
+                .timeout(Duration.ofMinutes(3))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+    }
+
+    private String randomChat() {
+        return chatIds.get(ThreadLocalRandom.current().nextInt(chatIds.size()));
+    }
+
+    private static String question() {
+        String[] questions = {
+                "Explain gradient descent", "What is back propagation?", "How are weights updated?",
+                "What does the learning rate control?", "Summarize the lecture on networks"};
+        return questions[ThreadLocalRandom.current().nextInt(questions.length)];
+    }
+
+    private static String lecture(Random random, int chars) {
+        String[] words = {"gradient", "descent", "layer", "network", "weights", "learning", "rate", "loss",
+                "the", "of", "and", "is", "computed", "function", "optimizer", "epoch", "batch"};
+        StringBuilder text = new StringBuilder(chars + 16);
+        int count = 0;
+        while (text.length() < chars) {
+            text.append(words[random.nextInt(words.length)]);
+            count++;
+            text.append(count % 15 == 0 ? (count % 90 == 0 ? ".\n\n" : ". ") : " ");
+        }
+        return text.toString();
+    }
+}
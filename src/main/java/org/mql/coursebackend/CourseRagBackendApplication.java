@@ -2,12 +2,35 @@ package org.mql.coursebackend;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.HashMap;
+import java.util.Map;
 
 @SpringBootApplication
+@EnableScheduling
 public class CourseRagBackendApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(CourseRagBackendApplication.class, args);
+        SpringApplication application = new SpringApplication(CourseRagBackendApplication.class);
+        application.setDefaultProperties(defaultProperties());
+        application.run(args);
+    }
+
+    /**
+     * Defaults that application.properties (or the environment) may still override.
+     */
+    public static Map<String, Object> defaultProperties() {
+        Map<String, Object> defaults = new HashMap<>();
+        // Open-session-in-view would pin a pooled JDBC connection to the request
+        // for the whole retrieval + LLM round trip.
+        defaults.put("spring.jpa.open-in-view", "false");
+        // Per-stage RAG timers and token counters are scraped from /actuator/prometheus
+        defaults.put("management.endpoints.web.exposure.include", "health,info,metrics,prometheus");
+        // Chat messages use sequence ids, so their inserts can go out in JDBC batches
+        defaults.put("spring.jpa.properties.hibernate.jdbc.batch_size", "50");
+        defaults.put("spring.jpa.properties.hibernate.order_inserts", "true");
+        return defaults;
     }
 
 }
@@ -0,0 +1,75 @@
+package org.mql.coursebackend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Worker pools for web fetches, ingestion, embedding and document parsing.
+ * <p>
+ * With {@code spring.threads.virtual.enabled=true} on Java 21 (see the
+ * {@code java21} Maven profile) the pools run on virtual threads, like Tomcat's
+ * request threads. Pool sizes stay as they are: they are caps on concurrent
+ * fetches, ingestions and embedding calls, not on threads.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+    private final boolean virtualThreads;
+
+    public ExecutorConfiguration(Environment environment) {
+        this.virtualThreads = Threading.VIRTUAL.isActive(environment);
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService webFetchExecutor(
+            @Value("${course.rag.web.max-concurrent-fetches:16}") int maxConcurrentFetches) {
+        // The pool size is the global cap on in-flight page fetches
+        return Executors.newFixedThreadPool(maxConcurrentFetches, threads("web-fetch-"));
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ThreadPoolExecutor ingestionExecutor(
+            @Value("${course.rag.ingestion.workers:2}") int workers,
+            @Value("${course.rag.ingestion.queue-capacity:20}") int queueCapacity) {
+        // Bounded queue + AbortPolicy: a full queue rejects new jobs instead of piling them up
+        return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threads("ingestion-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService embeddingExecutor(
+            @Value("${course.rag.ingestion.embedding-parallelism:4}") int embeddingParallelism) {
+        // Global cap on concurrent embedding requests across all running ingestions
+        return Executors.newFixedThreadPool(embeddingParallelism, threads("embedding-"));
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService documentParseExecutor() {
+        // One thread per large upload being streamed; bounded by the ingestion workers feeding it
+        return Executors.newCachedThreadPool(threads("document-parse-"));
+    }
+
+    private ThreadFactory threads(String prefix) {
+        // Virtual threads are always daemon threads
+        return virtualThreads ? new VirtualThreadTaskExecutor(prefix).getVirtualThreadFactory() : daemonThreads(prefix);
+    }
+
+    private static CustomizableThreadFactory daemonThreads(String prefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(prefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
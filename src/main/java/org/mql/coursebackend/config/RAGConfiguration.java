@@ -1,23 +1,42 @@
 package org.mql.coursebackend.config;
 
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.OpenAiChatModel;
 import dev.langchain4j.model.openai.OpenAiEmbeddingModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import dev.langchain4j.model.openai.OpenAiTokenizer;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.DefaultContentAggregator;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.chroma.ChromaEmbeddingStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.mql.coursebackend.rag.CachingEmbeddingModel;
+import org.mql.coursebackend.rag.ContextAssembler;
+import org.mql.coursebackend.rag.EmbeddedVectorStore;
+import org.mql.coursebackend.rag.LexicalOverlapScorer;
+import org.mql.coursebackend.rag.LlmMetricsListener;
+import org.mql.coursebackend.rag.RagMetrics;
+import org.mql.coursebackend.rag.RerankingContentAggregator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import java.time.Duration;
+import java.util.List;
 
 @Configuration
 public class RAGConfiguration {
 
+    public static final String COLLECTION_NAME = "course-materials";
+
     @Value("${langchain4j.openai.base-url}")
     private String openAiBaseUrl;
 
@@ -36,7 +55,30 @@ public class RAGConfiguration {
     @Value("${langchain4j.chroma.embedding-store.base-url}")
     private String chromaBaseUrl;
 
+    // "chroma" (default) or "embedded" for the in-process store
+    @Value("${course.rag.vector-store:chroma}")
+    private String vectorStore;
+
+    @Value("${course.rag.embedded-store.file:data/embedded-vectors.bin}")
+    private String embeddedStoreFile;
+
+    @Value("${course.rag.query-embedding-cache.max-entries:10000}")
+    private long queryEmbeddingCacheMaxEntries;
+
+    @Value("${course.rag.query-embedding-cache.file:}")
+    private String queryEmbeddingCacheFile;
+
+    @Value("${course.rag.rerank.enabled:true}")
+    private boolean rerankEnabled;
+
+    @Value("${course.rag.rerank.top-k:5}")
+    private int rerankTopK;
+
+    @Value("${course.rag.context.max-tokens:1500}")
+    private int contextMaxTokens;
+
     @Bean
+    @Primary
     public EmbeddingModel embeddingModel() {
         return OpenAiEmbeddingModel.builder()
                 .baseUrl(openAiBaseUrl)
@@ -46,29 +88,53 @@ public class RAGConfiguration {
                 .build();
     }
 
+    // Used for retrieval only, so ingested chunks do not churn the query cache
+    @Bean
+    public EmbeddingModel queryEmbeddingModel(EmbeddingModel embeddingModel, MeterRegistry meterRegistry,
+            RagMetrics ragMetrics) {
+        return new CachingEmbeddingModel(embeddingModel, queryEmbeddingCacheMaxEntries, queryEmbeddingCacheFile,
+                meterRegistry, ragMetrics.stage("query_embedding"));
+    }
+
     @Bean
     public EmbeddingStore<TextSegment> embeddingStore() {
+        if ("embedded".equalsIgnoreCase(vectorStore)) {
+            return new EmbeddedVectorStore(embeddedStoreFile);
+        }
         return ChromaEmbeddingStore.builder()
                 .baseUrl(chromaBaseUrl)
-                .collectionName("course-materials")
+                .collectionName(COLLECTION_NAME)
                 .timeout(Duration.ofSeconds(10))
                 .build();
     }
 
     @Bean
-    public ChatLanguageModel chatLanguageModel() {
+    public ChatLanguageModel chatLanguageModel(RagMetrics ragMetrics) {
         return OpenAiChatModel.builder()
                 .baseUrl(openAiBaseUrl)
                 .apiKey(openAiApiKey)
                 .modelName(chatModelName)
                 .temperature(temperature)
                 .timeout(Duration.ofSeconds(60))
+                .listeners(List.of(new LlmMetricsListener(ragMetrics)))
+                .build();
+    }
+
+    @Bean
+    public StreamingChatLanguageModel streamingChatLanguageModel(RagMetrics ragMetrics) {
+        return OpenAiStreamingChatModel.builder()
+                .baseUrl(openAiBaseUrl)
+                .apiKey(openAiApiKey)
+                .modelName(chatModelName)
+                .temperature(temperature)
+                .timeout(Duration.ofSeconds(60))
+                .listeners(List.of(new LlmMetricsListener(ragMetrics)))
                 .build();
     }
 
     @Bean
     public ContentRetriever contentRetriever(EmbeddingStore<TextSegment> embeddingStore,
-            EmbeddingModel embeddingModel) {
+            @Qualifier("queryEmbeddingModel") EmbeddingModel embeddingModel) {
         return EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(embeddingStore)
                 .embeddingModel(embeddingModel)
@@ -76,4 +142,19 @@ public class RAGConfiguration {
                 .minScore(0.5)
                 .build();
     }
+
+    // Token estimates only; cl100k is close enough for the models served behind the proxy
+    @Bean
+    public Tokenizer tokenizer() {
+        return new OpenAiTokenizer("gpt-3.5-turbo");
+    }
+
+    // Select (rerank or plain fusion), then merge neighbouring chunks and pack into the token budget
+    @Bean
+    public ContentAggregator contentAggregator(Tokenizer tokenizer) {
+        ContentAggregator selection = rerankEnabled
+                ? new RerankingContentAggregator(new LexicalOverlapScorer(), rerankTopK)
+                : new DefaultContentAggregator();
+        return new ContextAssembler(selection, tokenizer, contextMaxTokens);
+    }
 }
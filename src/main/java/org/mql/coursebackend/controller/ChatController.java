@@ -8,6 +8,8 @@ import org.mql.coursebackend.dto.ChatResponse;
 import org.mql.coursebackend.entity.ChatMessage;
 import org.mql.coursebackend.entity.ChatSession;
 import org.mql.coursebackend.service.ChatService;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -17,12 +19,15 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 @RestController
 @RequestMapping("/api/chat")
 @RequiredArgsConstructor
 public class ChatController {
 
+    private static final long STREAM_TIMEOUT_MS = 180_000;
+
     private final ChatService chatService;
 
     @PostMapping
@@ -35,6 +40,18 @@ public class ChatController {
         return chatService.chat(chatId, message, mode);
     }
 
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestParam(value = "chatId", required = false) String chatId,
+            @RequestBody String message,
+            @RequestParam(value = "mode", defaultValue = "LOCAL") String mode) {
+        if (chatId == null || chatId.isEmpty()) {
+            chatId = "default-user";
+        }
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        chatService.streamChat(chatId, message, mode, emitter);
+        return emitter;
+    }
+
     @PostMapping("/new")
     public ChatSession createChat() {
         return chatService.createChat();
@@ -45,11 +62,33 @@ public class ChatController {
         return chatService.getAllChats();
     }
 
+    @GetMapping(params = "limit")
+    public ResponseEntity<?> getChatPage(@RequestParam("limit") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        try {
+            return ResponseEntity.ok(chatService.getChatPage(cursor, limit));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/{chatId}/history")
     public List<ChatMessage> getChatHistory(@PathVariable String chatId) {
         return chatService.getChatHistory(chatId);
     }
 
+    @GetMapping(value = "/{chatId}/history", params = "limit")
+    public ResponseEntity<?> getChatHistoryPage(@PathVariable String chatId,
+            @RequestParam("limit") int limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "preview", defaultValue = "0") int previewChars) {
+        try {
+            return ResponseEntity.ok(chatService.getChatHistoryPage(chatId, cursor, limit, previewChars));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @DeleteMapping("/{chatId}")
     public void deleteChat(@PathVariable String chatId) {
         chatService.deleteChat(chatId);
@@ -3,15 +3,20 @@ package org.mql.coursebackend.controller;
 import lombok.RequiredArgsConstructor;
 
 import org.mql.coursebackend.dto.DocumentInfo;
+import org.mql.coursebackend.entity.IngestionJob;
 import org.mql.coursebackend.service.ChromaDocumentRecoveryService;
 import org.mql.coursebackend.service.DocumentStorageService;
+import org.mql.coursebackend.service.EmbeddingCleanupService;
+import org.mql.coursebackend.service.IngestionJobService;
 import org.mql.coursebackend.service.IngestionService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/documents")
@@ -19,8 +24,10 @@ import java.util.List;
 public class DocumentController {
 
     private final IngestionService ingestionService;
+    private final IngestionJobService ingestionJobService;
     private final DocumentStorageService documentStorageService;
     private final ChromaDocumentRecoveryService chromaRecoveryService;
+    private final EmbeddingCleanupService embeddingCleanupService;
 
     @PostMapping
     public ResponseEntity<String> uploadDocument(@RequestParam("file") MultipartFile file,
@@ -35,6 +42,28 @@ public class DocumentController {
         }
     }
 
+    @PostMapping(params = "async=true")
+    public ResponseEntity<?> uploadDocumentAsync(@RequestParam("file") MultipartFile file,
+            @RequestParam(value = "chatId", required = false) String chatId) {
+        try {
+            IngestionJob job = ingestionJobService.submit(file, chatId);
+            return ResponseEntity.accepted().body(job);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError().body("Failed to queue document: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<IngestionJob> getIngestionJob(@PathVariable String id) {
+        return ingestionJobService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     @GetMapping
     public ResponseEntity<List<DocumentInfo>> getAllDocuments(
             @RequestParam(value = "chatId", required = false) String chatId) {
@@ -44,7 +73,9 @@ public class DocumentController {
 
     @DeleteMapping("/{id}")
     public ResponseEntity<String> deleteDocument(@PathVariable String id) {
-        documentStorageService.deleteDocument(id);
+        if (!embeddingCleanupService.deleteDocument(id)) {
+            return ResponseEntity.notFound().build();
+        }
         return ResponseEntity.ok("Document deleted successfully");
     }
 
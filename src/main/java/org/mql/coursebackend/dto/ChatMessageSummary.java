@@ -0,0 +1,20 @@
+package org.mql.coursebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageSummary {
+    private Long id;
+    private String type;
+    // Full text, or only its first characters when a preview was requested
+    private String content;
+    private LocalDateTime createdAt;
+}
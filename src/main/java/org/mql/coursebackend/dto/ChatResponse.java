@@ -14,6 +14,8 @@ import java.util.List;
 public class ChatResponse {
     private String answer;
     private List<SourceDocument> sources;
+    // Input tokens reported by the model for this request; 0 when answered from cache
+    private Integer promptTokens;
 
     @Data
     @Builder
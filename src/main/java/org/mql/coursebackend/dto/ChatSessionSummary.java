@@ -0,0 +1,18 @@
+package org.mql.coursebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSessionSummary {
+    private String id;
+    private String title;
+    private LocalDateTime createdAt;
+}
@@ -1,11 +1,13 @@
 package org.mql.coursebackend.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Data
 @Builder
@@ -18,4 +20,7 @@ public class DocumentInfo {
     private LocalDateTime uploadedAt;
     private String chatId;
     private int totalChunks;
+    // Only set when recording a new document; not returned by listings
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> embeddingIds;
 }
@@ -0,0 +1,61 @@
+package org.mql.coursebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "embedding_cache", indexes = {
+        @Index(name = "idx_embedding_cache_created_at", columnList = "created_at")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CachedEmbedding implements Persistable<String> {
+    @Id
+    @Column(length = 64)
+    private String id; // SHA-256 of model name + chunk text
+
+    @Column(name = "model_name", length = 200)
+    private String modelName;
+
+    private int dimension;
+
+    @Lob
+    @Column(name = "vector")
+    private byte[] vector; // float32, big-endian
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    // Ids are assigned, so without this save() would merge: a SELECT per entry before each INSERT
+    @Transient
+    @Builder.Default
+    @EqualsAndHashCode.Exclude
+    private boolean newEntry = true;
+
+    @Override
+    public boolean isNew() {
+        return newEntry;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markPersisted() {
+        newEntry = false;
+    }
+}
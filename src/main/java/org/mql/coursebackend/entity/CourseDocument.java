@@ -0,0 +1,54 @@
+package org.mql.coursebackend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Entity
+@Table(name = "documents", indexes = {
+        @Index(name = "idx_documents_chat_id", columnList = "chat_id")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CourseDocument {
+    @Id
+    @Column(length = 36)
+    private String id; // UUID string
+
+    private String filename;
+
+    @Column(name = "file_size")
+    private long fileSize;
+
+    @Column(name = "uploaded_at")
+    private LocalDateTime uploadedAt;
+
+    // null for documents shared by all chats
+    @Column(name = "chat_id", length = 36)
+    private String chatId;
+
+    @Column(name = "total_chunks")
+    private int totalChunks;
+
+    // Only read when the document is deleted, so never fetched with listings
+    @ElementCollection(fetch = FetchType.LAZY)
+    @CollectionTable(name = "document_embedding_ids", joinColumns = @JoinColumn(name = "document_id"))
+    @Column(name = "embedding_id", length = 64)
+    @Builder.Default
+    private List<String> embeddingIds = new ArrayList<>();
+
+    @PrePersist
+    protected void onCreate() {
+        if (uploadedAt == null) {
+            uploadedAt = LocalDateTime.now();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.mql.coursebackend.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "ingestion_jobs", indexes = {
+        @Index(name = "idx_ingestion_jobs_status", columnList = "status")
+})
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id; // UUID string
+
+    @Column(name = "chat_id", length = 36)
+    private String chatId;
+
+    private String filename;
+
+    @Column(name = "file_size")
+    private long fileSize;
+
+    // Uploaded bytes are kept on disk until the job finishes so it can resume after a restart
+    @JsonIgnore
+    @Column(name = "stored_path", length = 1024)
+    private String storedPath;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private Status status;
+
+    @Column(name = "processed_chunks")
+    private int processedChunks;
+
+    @Column(name = "total_chunks")
+    private int totalChunks;
+
+    @Column(length = 2000)
+    private String error;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        updatedAt = createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
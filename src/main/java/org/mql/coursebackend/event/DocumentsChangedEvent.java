@@ -0,0 +1,9 @@
+package org.mql.coursebackend.event;
+
+/**
+ * Published whenever a document is added to or removed from a chat.
+ *
+ * @param chatId the affected chat, or {@code null}/empty for global documents
+ */
+public record DocumentsChangedEvent(String chatId) {
+}
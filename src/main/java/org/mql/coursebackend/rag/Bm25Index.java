@@ -0,0 +1,335 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-process BM25 index over ingested chunks, partitioned by chat.
+ * <p>
+ * Chunks are indexed incrementally as they are stored. Posting lists are
+ * primitive {@code int[]} pairs (document, term frequency) and scores are
+ * accumulated in a {@code float[]}, so a query over a chat's few hundred chunks
+ * takes well under a millisecond. Only the chunk texts and metadata are
+ * persisted; postings are rebuilt from them on startup.
+ */
+@Component
+@Slf4j
+public class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final String NO_CHAT = "";
+
+    private final Map<String, Partition> partitions = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final File file;
+    private volatile boolean dirty;
+
+    public Bm25Index(@Value("${course.rag.lexical-index.file:data/lexical-index.bin}") String file) {
+        this.file = file == null || file.isBlank() ? null : new File(file);
+    }
+
+    /**
+     * Lower-cased letter/digit/underscore runs, so identifiers such as
+     * {@code ArrayList} or {@code max_depth} survive as single terms.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length()
+                    && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    public void add(List<TextSegment> segments) {
+        lock.writeLock().lock();
+        try {
+            for (TextSegment segment : segments) {
+                partitions.computeIfAbsent(partitionKey(segment.metadata().getString("chatId")),
+                        key -> new Partition()).add(segment);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the chunks of a chat whose metadata matches.
+     */
+    public void remove(String chatId, Predicate<Metadata> predicate) {
+        lock.writeLock().lock();
+        try {
+            String key = partitionKey(chatId);
+            Partition partition = partitions.get(key);
+            if (partition == null) {
+                return;
+            }
+            Partition remaining = partition.without(predicate);
+            if (remaining.size == 0) {
+                partitions.remove(key);
+            } else {
+                partitions.put(key, remaining);
+            }
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeChat(String chatId) {
+        lock.writeLock().lock();
+        try {
+            partitions.remove(partitionKey(chatId));
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Content> search(String chatId, String query, int maxResults) {
+        lock.readLock().lock();
+        try {
+            Partition partition = partitions.get(partitionKey(chatId));
+            if (partition == null) {
+                return List.of();
+            }
+            return partition.search(tokenize(query), maxResults);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static String partitionKey(String chatId) {
+        return chatId != null ? chatId : NO_CHAT;
+    }
+
+    private static final class PostingList {
+        private int[] docs = new int[4];
+        private int[] freqs = new int[4];
+        private int size;
+
+        private void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+
+    private static final class Partition {
+        private final Map<String, PostingList> postings = new HashMap<>();
+        private TextSegment[] segments = new TextSegment[16];
+        private int[] lengths = new int[16];
+        private int size;
+        private long totalLength;
+
+        private void add(TextSegment segment) {
+            if (size == segments.length) {
+                segments = Arrays.copyOf(segments, size * 2);
+                lengths = Arrays.copyOf(lengths, size * 2);
+            }
+            int doc = size++;
+            segments[doc] = segment;
+
+            List<String> terms = tokenize(segment.text());
+            lengths[doc] = terms.size();
+            totalLength += terms.size();
+
+            // Terms come out in text order; count each one once per document
+            Map<String, int[]> counts = new HashMap<>();
+            for (String term : terms) {
+                counts.computeIfAbsent(term, t -> new int[1])[0]++;
+            }
+            counts.forEach((term, count) -> postings.computeIfAbsent(term, t -> new PostingList()).add(doc, count[0]));
+        }
+
+        private Partition without(Predicate<Metadata> predicate) {
+            Partition rebuilt = new Partition();
+            for (int doc = 0; doc < size; doc++) {
+                if (!predicate.test(segments[doc].metadata())) {
+                    rebuilt.add(segments[doc]);
+                }
+            }
+            return rebuilt;
+        }
+
+        private List<Content> search(List<String> queryTerms, int maxResults) {
+            if (size == 0 || queryTerms.isEmpty()) {
+                return List.of();
+            }
+            float averageLength = Math.max(1f, (float) totalLength / size);
+            float[] scores = new float[size];
+            boolean any = false;
+
+            for (String term : queryTerms.stream().distinct().toList()) {
+                PostingList postingList = postings.get(term);
+                if (postingList == null) {
+                    continue;
+                }
+                any = true;
+                float idf = (float) Math.log(1 + (size - postingList.size + 0.5) / (postingList.size + 0.5));
+                for (int i = 0; i < postingList.size; i++) {
+                    int doc = postingList.docs[i];
+                    int freq = postingList.freqs[i];
+                    float norm = K1 * (1 - B + B * lengths[doc] / averageLength);
+                    scores[doc] += idf * freq * (K1 + 1) / (freq + norm);
+                }
+            }
+            if (!any) {
+                return List.of();
+            }
+
+            // Partial selection of the best maxResults documents
+            int limit = Math.min(maxResults, size);
+            int[] top = new int[limit];
+            int found = 0;
+            for (int doc = 0; doc < size; doc++) {
+                if (scores[doc] <= 0) {
+                    continue;
+                }
+                if (found < limit) {
+                    top[found++] = doc;
+                } else if (scores[doc] > scores[top[limit - 1]]) {
+                    top[limit - 1] = doc;
+                } else {
+                    continue;
+                }
+                for (int i = found - 1; i > 0 && scores[top[i]] > scores[top[i - 1]]; i--) {
+                    int swap = top[i];
+                    top[i] = top[i - 1];
+                    top[i - 1] = swap;
+                }
+            }
+
+            List<Content> results = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                results.add(Content.from(segments[top[i]]));
+            }
+            return results;
+        }
+    }
+
+    // Persistence
+
+    @PostConstruct
+    public void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            List<TextSegment> segments = new ArrayList<>();
+            int total = in.readInt();
+            for (int i = 0; i < total; i++) {
+                String text = readString(in);
+                int entries = in.readInt();
+                Map<String, Object> metadata = new HashMap<>();
+                for (int e = 0; e < entries; e++) {
+                    metadata.put(readString(in), readString(in));
+                }
+                segments.add(TextSegment.from(text, Metadata.from(metadata)));
+            }
+            add(segments);
+            dirty = false;
+            count = total;
+        } catch (IOException e) {
+            log.error("Failed to load lexical index from {}", file, e);
+        }
+        log.info("Rebuilt lexical index with {} chunks from {}", count, file);
+    }
+
+    @Scheduled(fixedDelayString = "${course.rag.lexical-index.flush-interval:PT30S}")
+    @PreDestroy
+    public void flush() {
+        if (file == null || !dirty) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            dirty = false;
+            File temp = new File(file.getPath() + ".tmp");
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                int total = 0;
+                for (Partition partition : partitions.values()) {
+                    total += partition.size;
+                }
+                out.writeInt(total);
+                for (Partition partition : partitions.values()) {
+                    for (int doc = 0; doc < partition.size; doc++) {
+                        TextSegment segment = partition.segments[doc];
+                        writeString(out, segment.text());
+                        Map<String, Object> metadata = segment.metadata().toMap();
+                        out.writeInt(metadata.size());
+                        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+                            writeString(out, entry.getKey());
+                            writeString(out, String.valueOf(entry.getValue()));
+                        }
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            log.error("Failed to persist lexical index to {}", file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] utf8 = new byte[in.readInt()];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,162 @@
+package org.mql.coursebackend.rag;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link EmbeddingModel} decorator that caches query embeddings.
+ * <p>
+ * Texts are normalized (NFKC, case, whitespace) before lookup so trivially
+ * different spellings of the same question share an entry; the model still sees
+ * the text as it was written, since case can matter to it. Vectors are held as
+ * primitive {@code float[]} in a bounded LRU and can optionally be written to
+ * disk on shutdown and reloaded on startup.
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final Cache<String, float[]> cache;
+    private final File diskFile;
+    private final Timer embedTimer;
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, long maxEntries, String diskFile,
+            MeterRegistry meterRegistry, Timer embedTimer) {
+        this.delegate = delegate;
+        this.embedTimer = embedTimer;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        this.diskFile = diskFile == null || diskFile.isBlank() ? null : new File(diskFile);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "course.query.embeddings");
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        // Hits are timed too, so the stage shows what retrieval actually waits for
+        return embedTimer.record(() -> embedAllCached(textSegments));
+    }
+
+    private Response<List<Embedding>> embedAllCached(List<TextSegment> textSegments) {
+        float[][] vectors = new float[textSegments.size()][];
+        // Misses by cache key; the first segment's original text is what gets embedded
+        Map<String, List<Integer>> missingPositions = new LinkedHashMap<>();
+        List<TextSegment> missingSegments = new ArrayList<>();
+
+        for (int i = 0; i < textSegments.size(); i++) {
+            String key = normalize(textSegments.get(i).text());
+            float[] cached = cache.getIfPresent(key);
+            if (cached != null) {
+                vectors[i] = cached;
+                continue;
+            }
+            List<Integer> positions = missingPositions.get(key);
+            if (positions == null) {
+                positions = new ArrayList<>();
+                missingPositions.put(key, positions);
+                missingSegments.add(TextSegment.from(textSegments.get(i).text()));
+            }
+            positions.add(i);
+        }
+
+        Response<List<Embedding>> computed = null;
+        if (!missingSegments.isEmpty()) {
+            computed = delegate.embedAll(missingSegments);
+            List<Embedding> embeddings = computed.content();
+            int i = 0;
+            for (Map.Entry<String, List<Integer>> missing : missingPositions.entrySet()) {
+                float[] vector = embeddings.get(i++).vector();
+                cache.put(missing.getKey(), vector);
+                for (int position : missing.getValue()) {
+                    vectors[position] = vector;
+                }
+            }
+        }
+
+        // Hand out copies: callers are free to normalize embeddings in place
+        List<Embedding> result = new ArrayList<>(vectors.length);
+        for (float[] vector : vectors) {
+            result.add(Embedding.from(vector.clone()));
+        }
+        return computed != null ? Response.from(result, computed.tokenUsage()) : Response.from(result);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC)
+                .trim()
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ");
+    }
+
+    @PostConstruct
+    public void load() {
+        if (diskFile == null || !diskFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(diskFile)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                float[] vector = new float[in.readInt()];
+                for (int d = 0; d < vector.length; d++) {
+                    vector[d] = in.readFloat();
+                }
+                cache.put(key, vector);
+            }
+            log.info("Loaded {} cached query embeddings from {}", count, diskFile);
+        } catch (IOException e) {
+            log.warn("Failed to load query embedding cache from {}: {}", diskFile, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void save() {
+        if (diskFile == null) {
+            return;
+        }
+        Map<String, float[]> entries = Map.copyOf(cache.asMap());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(diskFile)))) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, float[]> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (float value : entry.getValue()) {
+                    out.writeFloat(value);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to save query embedding cache to {}: {}", diskFile, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.mql.coursebackend.rag;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.config.RAGConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Pages through the records of the Chroma collection over its REST API.
+ * <p>
+ * LangChain4j's {@code EmbeddingStore} can only search, so listing what is stored
+ * (for garbage collection and document recovery) goes through here.
+ */
+@Component
+@Slf4j
+public class ChromaCollectionClient {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String baseUrl;
+
+    public record Record(String id, Map<String, Object> metadata, String document) {
+    }
+
+    public ChromaCollectionClient(@Value("${langchain4j.chroma.embedding-store.base-url}") String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    /**
+     * Visits every record of the collection, {@code pageSize} at a time. Documents
+     * are only fetched when asked for; metadata always is.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(int pageSize, boolean includeDocuments, Consumer<Record> visitor) throws IOException {
+        String collectionId = collectionId();
+        if (collectionId == null) {
+            return;
+        }
+        List<String> include = includeDocuments ? List.of("metadatas", "documents") : List.of("metadatas");
+        for (int offset = 0; ; offset += pageSize) {
+            JsonNode page = post("/api/v1/collections/" + collectionId + "/get",
+                    Map.of("limit", pageSize, "offset", offset, "include", include));
+            JsonNode ids = page.path("ids");
+            for (int i = 0; i < ids.size(); i++) {
+                JsonNode metadata = page.path("metadatas").path(i);
+                JsonNode document = page.path("documents").path(i);
+                visitor.accept(new Record(ids.get(i).asText(),
+                        metadata.isObject() ? objectMapper.convertValue(metadata, Map.class) : Map.of(),
+                        document.isTextual() ? document.asText() : null));
+            }
+            if (ids.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private String collectionId() throws IOException {
+        String name = URLEncoder.encode(RAGConfiguration.COLLECTION_NAME, StandardCharsets.UTF_8);
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + "/api/v1/collections/" + name))
+                .timeout(TIMEOUT)
+                .GET()
+                .build());
+        if (response.statusCode() != 200) {
+            log.debug("Chroma collection {} not available ({})", RAGConfiguration.COLLECTION_NAME,
+                    response.statusCode());
+            return null;
+        }
+        return objectMapper.readTree(response.body()).path("id").asText(null);
+    }
+
+    private JsonNode post(String path, Object body) throws IOException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .timeout(TIMEOUT)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)))
+                .build());
+        if (response.statusCode() != 200) {
+            throw new IOException("Chroma returned " + response.statusCode() + " for " + path + ": " + response.body());
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    private HttpResponse<String> send(HttpRequest request) throws IOException {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calling Chroma", e);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.List;
+
+/**
+ * Relevance scorer used by {@link RerankingContentAggregator}; higher is more relevant.
+ * Implementations must run locally on the CPU, they sit on every retrieval.
+ */
+public interface ContentScorer {
+
+    double[] score(String query, List<Content> candidates);
+}
@@ -0,0 +1,182 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Turns the selected chunks into the context that is actually sent to the model.
+ * <p>
+ * Exact duplicates are dropped, chunks of the same document with consecutive
+ * {@code chunk_index} values are merged into one block with the splitter overlap
+ * removed, and the blocks are packed, best first, into a token budget. A merged
+ * block keeps the metadata of its first chunk plus {@code chunk_end}. Chunks
+ * belong to the same document when their {@code document_id} matches, or, for
+ * chunks ingested before document ids existed, their filename.
+ */
+@Slf4j
+public class ContextAssembler implements ContentAggregator {
+
+    // The splitter overlaps by 100 characters; allow slack for whitespace and sentence boundaries
+    private static final int MAX_OVERLAP = 400;
+    private static final int MIN_OVERLAP = 8;
+
+    private final ContentAggregator delegate;
+    private final Tokenizer tokenizer;
+    private final int maxTokens;
+
+    public ContextAssembler(ContentAggregator delegate, Tokenizer tokenizer, int maxTokens) {
+        this.delegate = delegate;
+        this.tokenizer = tokenizer;
+        this.maxTokens = maxTokens;
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        List<Content> selected = delegate.aggregate(queryToContents);
+        List<Content> merged = merge(selected);
+
+        List<Content> packed = new ArrayList<>(merged.size());
+        int tokens = 0;
+        for (Content block : merged) {
+            int cost = tokenizer.estimateTokenCountInText(block.textSegment().text());
+            if (packed.isEmpty() && cost > maxTokens) {
+                // Something is always sent: the best block is cut down to the budget
+                block = truncate(block, cost);
+                cost = tokenizer.estimateTokenCountInText(block.textSegment().text());
+            } else if (tokens + cost > maxTokens) {
+                continue;
+            }
+            packed.add(block);
+            tokens += cost;
+        }
+        log.info("Assembled context: {} chunks -> {} blocks, {} tokens (budget {})",
+                selected.size(), packed.size(), tokens, maxTokens);
+        return packed;
+    }
+
+    /**
+     * Shortens a block to about {@code maxTokens}, cutting at a word boundary.
+     */
+    private Content truncate(Content block, int cost) {
+        String text = block.textSegment().text();
+        while (cost > maxTokens && !text.isEmpty()) {
+            int length = (int) ((long) text.length() * maxTokens / cost);
+            int space = text.lastIndexOf(' ', length);
+            text = text.substring(0, space > length / 2 ? space : length);
+            cost = tokenizer.estimateTokenCountInText(text);
+        }
+        return Content.from(TextSegment.from(text, block.textSegment().metadata()));
+    }
+
+    private record Ranked(int rank, int chunkIndex, Content content) {
+    }
+
+    static List<Content> merge(List<Content> contents) {
+        List<Ranked> blocks = new ArrayList<>();
+        Set<String> seenTexts = new HashSet<>();
+        Map<String, TreeMap<Integer, Ranked>> chunksByDocument = new LinkedHashMap<>();
+
+        for (int rank = 0; rank < contents.size(); rank++) {
+            Content content = contents.get(rank);
+            TextSegment segment = content.textSegment();
+            if (!seenTexts.add(segment.text())) {
+                continue;
+            }
+            String document = documentKey(segment.metadata());
+            Integer chunkIndex = parseIndex(segment.metadata().getString("chunk_index"));
+            if (document == null || chunkIndex == null) {
+                blocks.add(new Ranked(rank, -1, content));
+                continue;
+            }
+            chunksByDocument.computeIfAbsent(document, key -> new TreeMap<>())
+                    .putIfAbsent(chunkIndex, new Ranked(rank, chunkIndex, content));
+        }
+
+        for (TreeMap<Integer, Ranked> chunks : chunksByDocument.values()) {
+            List<Ranked> run = new ArrayList<>();
+            for (Ranked chunk : chunks.values()) {
+                if (!run.isEmpty() && chunk.chunkIndex() != run.get(run.size() - 1).chunkIndex() + 1) {
+                    blocks.add(mergeRun(run));
+                    run = new ArrayList<>();
+                }
+                run.add(chunk);
+            }
+            blocks.add(mergeRun(run));
+        }
+
+        // A block ranks as well as its best chunk
+        blocks.sort(Comparator.comparingInt(Ranked::rank));
+        return blocks.stream().map(Ranked::content).toList();
+    }
+
+    private static Ranked mergeRun(List<Ranked> run) {
+        Ranked first = run.get(0);
+        if (run.size() == 1) {
+            return first;
+        }
+        StringBuilder text = new StringBuilder(first.content().textSegment().text());
+        int bestRank = first.rank();
+        for (int i = 1; i < run.size(); i++) {
+            String next = run.get(i).content().textSegment().text();
+            int overlap = overlap(text, next);
+            if (overlap > 0) {
+                text.append(next, overlap, next.length());
+            } else {
+                text.append('\n').append(next);
+            }
+            bestRank = Math.min(bestRank, run.get(i).rank());
+        }
+        Metadata metadata = first.content().textSegment().metadata().copy();
+        metadata.put("chunk_end", String.valueOf(run.get(run.size() - 1).chunkIndex()));
+        return new Ranked(bestRank, first.chunkIndex(), Content.from(TextSegment.from(text.toString(), metadata)));
+    }
+
+    /**
+     * Length of the longest suffix of {@code previous} that is a prefix of {@code next}.
+     */
+    static int overlap(CharSequence previous, String next) {
+        int max = Math.min(MAX_OVERLAP, Math.min(previous.length(), next.length()));
+        String tail = previous.subSequence(previous.length() - max, previous.length()).toString();
+        for (int length = max; length >= MIN_OVERLAP; length--) {
+            if (tail.regionMatches(max - length, next, 0, length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+
+    private static String documentKey(Metadata metadata) {
+        String documentId = metadata.getString("document_id");
+        if (documentId != null) {
+            return "id:" + documentId;
+        }
+        String filename = metadata.getString("filename");
+        return filename != null ? "file:" + filename : null;
+    }
+
+    private static Integer parseIndex(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * In-process {@link EmbeddingStore} for small per-chat corpora.
+ * <p>
+ * Vectors are L2-normalized and packed into one contiguous {@code float[]} per
+ * chat partition, so a chat-filtered search is a brute-force dot-product scan
+ * over a few hundred rows with no network hop. The whole store is snapshotted to
+ * a file when dirty and on shutdown, and reloaded on startup through
+ * memory-mapped windows.
+ */
+@Slf4j
+public class EmbeddedVectorStore implements EmbeddingStore<TextSegment> {
+
+    static final String CHAT_ID = "chatId";
+    private static final String NO_CHAT = "";
+    private static final int MAGIC = 0x43525653;
+    private static final int FORMAT_VERSION = 1;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private final Map<String, Partition> partitions = new HashMap<>();
+    private final Map<String, String> partitionById = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final File file;
+    private volatile boolean dirty;
+    private int dimension = -1;
+
+    public EmbeddedVectorStore(String file) {
+        this.file = file == null || file.isBlank() ? null : new File(file);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        write(() -> insert(id, embedding, null));
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        String id = UUID.randomUUID().toString();
+        write(() -> insert(id, embedding, textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return addAll(embeddings, null);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (textSegments != null && textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("The list of embeddings and text segments must have the same size");
+        }
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (int i = 0; i < embeddings.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        write(() -> {
+            for (int i = 0; i < embeddings.size(); i++) {
+                insert(ids.get(i), embeddings.get(i), textSegments != null ? textSegments.get(i) : null);
+            }
+        });
+        return ids;
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        write(() -> ids.forEach(this::removeById));
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        write(() -> {
+            List<String> matching = new ArrayList<>();
+            for (Partition partition : partitionsFor(filter)) {
+                for (int slot = 0; slot < partition.size; slot++) {
+                    TextSegment segment = partition.segments[slot];
+                    if (segment != null && filter.test(segment.metadata())) {
+                        matching.add(partition.ids[slot]);
+                    }
+                }
+            }
+            matching.forEach(this::removeById);
+        });
+    }
+
+    @Override
+    public void removeAll() {
+        write(() -> {
+            partitions.clear();
+            partitionById.clear();
+        });
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = normalized(request.queryEmbedding().vector());
+        Filter filter = request.filter();
+        // An exact chatId filter is fully answered by picking the partition
+        boolean filterIsPartition = filter instanceof IsEqualTo equalTo && CHAT_ID.equals(equalTo.key());
+
+        PriorityQueue<EmbeddingMatch<TextSegment>> top = new PriorityQueue<>(
+                Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()));
+        lock.readLock().lock();
+        try {
+            if (query.length != dimension) {
+                return new EmbeddingSearchResult<>(List.of());
+            }
+            for (Partition partition : partitionsFor(filter)) {
+                for (int slot = 0; slot < partition.size; slot++) {
+                    double score = RelevanceScore.fromCosineSimilarity(partition.dot(slot, query));
+                    if (score < request.minScore()) {
+                        continue;
+                    }
+                    if (top.size() == request.maxResults() && score <= top.peek().score()) {
+                        continue;
+                    }
+                    TextSegment segment = partition.segments[slot];
+                    if (filter != null && !filterIsPartition
+                            && (segment == null || !filter.test(segment.metadata()))) {
+                        continue;
+                    }
+                    top.add(new EmbeddingMatch<>(score, partition.ids[slot],
+                            Embedding.from(partition.vector(slot)), segment));
+                    if (top.size() > request.maxResults()) {
+                        top.poll();
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top);
+        matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    /**
+     * Visits every stored segment with its id, under the read lock.
+     */
+    public void forEach(BiConsumer<String, TextSegment> visitor) {
+        lock.readLock().lock();
+        try {
+            for (Partition partition : partitions.values()) {
+                for (int slot = 0; slot < partition.size; slot++) {
+                    visitor.accept(partition.ids[slot], partition.segments[slot]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void write(Runnable mutation) {
+        lock.writeLock().lock();
+        try {
+            mutation.run();
+            dirty = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(String id, Embedding embedding, TextSegment segment) {
+        float[] vector = embedding.vector();
+        if (dimension < 0) {
+            dimension = vector.length;
+        } else if (vector.length != dimension) {
+            throw new IllegalArgumentException(
+                    "Embedding dimension " + vector.length + " does not match store dimension " + dimension);
+        }
+        removeById(id);
+        String key = partitionKey(segment);
+        partitions.computeIfAbsent(key, k -> new Partition(dimension)).append(id, normalized(vector), segment);
+        partitionById.put(id, key);
+    }
+
+    private void removeById(String id) {
+        String key = partitionById.remove(id);
+        if (key == null) {
+            return;
+        }
+        Partition partition = partitions.get(key);
+        partition.remove(id);
+        if (partition.size == 0) {
+            partitions.remove(key);
+        }
+    }
+
+    private Collection<Partition> partitionsFor(Filter filter) {
+        String key = partitionKeyOf(filter);
+        if (key == null) {
+            return partitions.values();
+        }
+        Partition partition = partitions.get(key);
+        return partition != null ? List.of(partition) : List.of();
+    }
+
+    private static String partitionKeyOf(Filter filter) {
+        if (filter instanceof IsEqualTo equalTo && CHAT_ID.equals(equalTo.key())) {
+            return String.valueOf(equalTo.comparisonValue());
+        }
+        if (filter instanceof And and) {
+            String key = partitionKeyOf(and.left());
+            return key != null ? key : partitionKeyOf(and.right());
+        }
+        return null;
+    }
+
+    private static String partitionKey(TextSegment segment) {
+        if (segment == null) {
+            return NO_CHAT;
+        }
+        String chatId = segment.metadata().getString(CHAT_ID);
+        return chatId != null ? chatId : NO_CHAT;
+    }
+
+    private static float[] normalized(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        float inverse = sum == 0 ? 0f : (float) (1.0 / Math.sqrt(sum));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * inverse;
+        }
+        return result;
+    }
+
+    /**
+     * Rows of one chat: row {@code i} occupies
+     * {@code vectors[i * dimension .. (i + 1) * dimension)}.
+     */
+    private static final class Partition {
+        private final int dimension;
+        private final Map<String, Integer> slots = new HashMap<>();
+        private float[] vectors;
+        private String[] ids;
+        private TextSegment[] segments;
+        private int size;
+
+        private Partition(int dimension) {
+            this.dimension = dimension;
+            this.vectors = new float[16 * dimension];
+            this.ids = new String[16];
+            this.segments = new TextSegment[16];
+        }
+
+        private void append(String id, float[] vector, TextSegment segment) {
+            if (size == ids.length) {
+                int capacity = ids.length * 2;
+                vectors = Arrays.copyOf(vectors, capacity * dimension);
+                ids = Arrays.copyOf(ids, capacity);
+                segments = Arrays.copyOf(segments, capacity);
+            }
+            System.arraycopy(vector, 0, vectors, size * dimension, dimension);
+            ids[size] = id;
+            segments[size] = segment;
+            slots.put(id, size);
+            size++;
+        }
+
+        // Swap-remove keeps the rows contiguous
+        private void remove(String id) {
+            Integer slot = slots.remove(id);
+            if (slot == null) {
+                return;
+            }
+            int last = size - 1;
+            if (slot != last) {
+                System.arraycopy(vectors, last * dimension, vectors, slot * dimension, dimension);
+                ids[slot] = ids[last];
+                segments[slot] = segments[last];
+                slots.put(ids[slot], slot);
+            }
+            ids[last] = null;
+            segments[last] = null;
+            size--;
+        }
+
+        // Plain indexed loop over a contiguous array: the JIT vectorizes this
+        private float dot(int slot, float[] query) {
+            int offset = slot * dimension;
+            float sum = 0f;
+            for (int i = 0; i < dimension; i++) {
+                sum += vectors[offset + i] * query[i];
+            }
+            return sum;
+        }
+
+        private float[] vector(int slot) {
+            return Arrays.copyOfRange(vectors, slot * dimension, (slot + 1) * dimension);
+        }
+    }
+
+    // Persistence
+
+    @PostConstruct
+    public void load() {
+        if (file == null || !file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            // Mapped a window at a time: a single mapping cannot exceed 2 GB
+            long windowStart = 0;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_WINDOW));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.warn("Ignoring {}: not an embedded vector store snapshot", file);
+                return;
+            }
+            int storedDimension = buffer.getInt();
+            int count = buffer.getInt();
+            lock.writeLock().lock();
+            try {
+                for (int i = 0; i < count; i++) {
+                    int rowStart = buffer.position();
+                    if (windowStart + buffer.limit() < size && buffer.remaining() < MAP_WINDOW / 2) {
+                        // Start the next window at this row so no row straddles two windows
+                        windowStart += rowStart;
+                        buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                                Math.min(size - windowStart, MAP_WINDOW));
+                    }
+                    String id = readString(buffer);
+                    TextSegment segment = buffer.get() == 1 ? readSegment(buffer) : null;
+                    float[] vector = new float[storedDimension];
+                    buffer.asFloatBuffer().get(vector);
+                    buffer.position(buffer.position() + storedDimension * Float.BYTES);
+                    insert(id, Embedding.from(vector), segment);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Loaded {} vectors from {}", count, file);
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to load embedded vector store from {}", file, e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${course.rag.embedded-store.flush-interval:PT30S}")
+    @PreDestroy
+    public void flush() {
+        if (file == null || !dirty) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            writeSnapshot();
+            // Writers hold the write lock, so nothing changed since the snapshot began
+            dirty = false;
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to persist embedded vector store to {}", file, e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        int count = 0;
+        for (Partition partition : partitions.values()) {
+            count += partition.size;
+        }
+
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            // Rows are staged in a heap buffer and written sequentially, so the file size is unbounded
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_BYTES);
+            buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(Math.max(dimension, 0)).putInt(count);
+            for (Partition partition : partitions.values()) {
+                for (int slot = 0; slot < partition.size; slot++) {
+                    TextSegment segment = partition.segments[slot];
+                    long rowBytes = sizeOf(partition.ids[slot]) + 1 + (long) dimension * Float.BYTES
+                            + (segment != null ? sizeOf(segment) : 0);
+                    if (buffer.remaining() < rowBytes) {
+                        drain(channel, buffer);
+                        if (buffer.capacity() < rowBytes) {
+                            buffer = ByteBuffer.allocate(Math.toIntExact(rowBytes));
+                        }
+                    }
+                    writeString(buffer, partition.ids[slot]);
+                    buffer.put((byte) (segment != null ? 1 : 0));
+                    if (segment != null) {
+                        writeSegment(buffer, segment);
+                    }
+                    buffer.asFloatBuffer().put(partition.vectors, slot * dimension, dimension);
+                    buffer.position(buffer.position() + dimension * Float.BYTES);
+                }
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long sizeOf(String value) {
+        return Integer.BYTES + value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static long sizeOf(TextSegment segment) {
+        long bytes = sizeOf(segment.text()) + Integer.BYTES;
+        for (Map.Entry<String, Object> entry : segment.metadata().toMap().entrySet()) {
+            bytes += sizeOf(entry.getKey()) + 1 + sizeOf(String.valueOf(entry.getValue()));
+        }
+        return bytes;
+    }
+
+    private static void writeString(ByteBuffer buffer, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(utf8.length).put(utf8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] utf8 = new byte[buffer.getInt()];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static void writeSegment(ByteBuffer buffer, TextSegment segment) {
+        writeString(buffer, segment.text());
+        Map<String, Object> metadata = segment.metadata().toMap();
+        buffer.putInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(buffer, entry.getKey());
+            buffer.put(typeTag(entry.getValue()));
+            writeString(buffer, String.valueOf(entry.getValue()));
+        }
+    }
+
+    private static TextSegment readSegment(ByteBuffer buffer) {
+        String text = readString(buffer);
+        int entries = buffer.getInt();
+        Map<String, Object> metadata = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            String key = readString(buffer);
+            byte type = buffer.get();
+            metadata.put(key, fromTagged(type, readString(buffer)));
+        }
+        return TextSegment.from(text, Metadata.from(metadata));
+    }
+
+    private static byte typeTag(Object value) {
+        if (value instanceof Integer) {
+            return 'I';
+        } else if (value instanceof Long) {
+            return 'L';
+        } else if (value instanceof Float) {
+            return 'F';
+        } else if (value instanceof Double) {
+            return 'D';
+        } else if (value instanceof UUID) {
+            return 'U';
+        }
+        return 'S';
+    }
+
+    private static Object fromTagged(byte type, String value) {
+        return switch (type) {
+            case 'I' -> Integer.valueOf(value);
+            case 'L' -> Long.valueOf(value);
+            case 'F' -> Float.valueOf(value);
+            case 'D' -> Double.valueOf(value);
+            case 'U' -> UUID.fromString(value);
+            default -> value;
+        };
+    }
+}
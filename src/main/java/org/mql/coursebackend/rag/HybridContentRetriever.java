@@ -0,0 +1,78 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fuses dense (vector) and lexical (BM25) results for one chat with
+ * reciprocal-rank fusion: each chunk scores {@code sum(1 / (k + rank))} over the
+ * lists it appears in.
+ */
+public class HybridContentRetriever implements ContentRetriever {
+
+    private static final int RRF_K = 60;
+
+    private final ContentRetriever vectorRetriever;
+    private final Bm25Index lexicalIndex;
+    private final String chatId;
+    private final int lexicalCandidates;
+    private final int maxResults;
+
+    public HybridContentRetriever(ContentRetriever vectorRetriever, Bm25Index lexicalIndex, String chatId,
+            int lexicalCandidates, int maxResults) {
+        this.vectorRetriever = vectorRetriever;
+        this.lexicalIndex = lexicalIndex;
+        this.chatId = chatId;
+        this.lexicalCandidates = lexicalCandidates;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<Content> lexical = lexicalIndex.search(chatId, query.text(), lexicalCandidates);
+        List<Content> dense = vectorRetriever.retrieve(query);
+        return fuse(List.of(dense, lexical), maxResults);
+    }
+
+    static List<Content> fuse(List<List<Content>> rankings, int maxResults) {
+        Map<String, Content> contents = new LinkedHashMap<>();
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (List<Content> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Content content = ranking.get(rank);
+                String key = chunkKey(content.textSegment());
+                contents.putIfAbsent(key, content);
+                scores.merge(key, 1.0 / (RRF_K + rank + 1), Double::sum);
+            }
+        }
+        List<String> keys = new ArrayList<>(scores.keySet());
+        keys.sort(Comparator.comparingDouble((String key) -> scores.get(key)).reversed());
+        return keys.stream().limit(maxResults).map(contents::get).toList();
+    }
+
+    /**
+     * Identifies a chunk across result lists: document id and chunk index, the
+     * filename for chunks ingested before document ids existed, else the text.
+     * Filenames alone are not unique; two uploads can share one.
+     */
+    public static String chunkKey(TextSegment segment) {
+        String chunkIndex = segment.metadata().getString("chunk_index");
+        if (chunkIndex == null) {
+            return segment.text();
+        }
+        String documentId = segment.metadata().getString("document_id");
+        if (documentId != null) {
+            return documentId + "#" + chunkIndex;
+        }
+        String filename = segment.metadata().getString("filename");
+        return filename != null ? filename + "#" + chunkIndex : segment.text();
+    }
+}
@@ -0,0 +1,61 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Scores candidates by the IDF-weighted share of query terms they contain, with
+ * IDF taken over the candidate pool itself. Returns values in [0, 1].
+ */
+public class LexicalOverlapScorer implements ContentScorer {
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "can", "do", "does", "for", "from", "how", "in",
+            "is", "it", "of", "on", "or", "the", "this", "that", "to", "what", "when", "where", "which", "who",
+            "why", "with", "explain", "describe", "define");
+
+    @Override
+    public double[] score(String query, List<Content> candidates) {
+        Set<String> queryTerms = new HashSet<>();
+        for (String term : Bm25Index.tokenize(query)) {
+            if (term.length() > 1 && !STOP_WORDS.contains(term)) {
+                queryTerms.add(term);
+            }
+        }
+        double[] scores = new double[candidates.size()];
+        if (queryTerms.isEmpty() || candidates.isEmpty()) {
+            return scores;
+        }
+
+        List<Set<String>> candidateTerms = new ArrayList<>(candidates.size());
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (Content candidate : candidates) {
+            Set<String> terms = new HashSet<>(Bm25Index.tokenize(candidate.textSegment().text()));
+            terms.retainAll(queryTerms);
+            candidateTerms.add(terms);
+            terms.forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+        }
+
+        double totalWeight = 0;
+        Map<String, Double> weights = new HashMap<>();
+        for (String term : queryTerms) {
+            double idf = Math.log(1 + (double) candidates.size() / (1 + documentFrequency.getOrDefault(term, 0)));
+            weights.put(term, idf);
+            totalWeight += idf;
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            double matched = 0;
+            for (String term : candidateTerms.get(i)) {
+                matched += weights.get(term);
+            }
+            scores[i] = matched / totalWeight;
+        }
+        return scores;
+    }
+}
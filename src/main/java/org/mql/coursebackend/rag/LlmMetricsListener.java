@@ -0,0 +1,45 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.model.chat.listener.ChatModelErrorContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every chat model call and counts its token usage. Registered on both the
+ * blocking and the streaming model, so streamed answers are measured too.
+ */
+public class LlmMetricsListener implements ChatModelListener {
+
+    private static final String STARTED_AT = "course.llm.started-at";
+
+    private final RagMetrics metrics;
+
+    public LlmMetricsListener(RagMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void onRequest(ChatModelRequestContext requestContext) {
+        requestContext.attributes().put(STARTED_AT, System.nanoTime());
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext responseContext) {
+        record("llm_generation", (Long) responseContext.attributes().get(STARTED_AT));
+        metrics.recordTokenUsage(responseContext.response().tokenUsage());
+    }
+
+    @Override
+    public void onError(ChatModelErrorContext errorContext) {
+        record("llm_error", (Long) errorContext.attributes().get(STARTED_AT));
+    }
+
+    private void record(String stage, Long startedAt) {
+        if (startedAt != null) {
+            metrics.stage(stage).record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.mql.coursebackend.rag;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.input.PromptTemplate;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.repository.ChatMessageRepository;
+import org.mql.coursebackend.service.ChatMessageWriter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Conversation memory for {@code CourseAgent}, backed by the chat_messages table.
+ * <p>
+ * The table stays the source of truth: {@code ChatService} persists every turn
+ * itself, so this store never writes to it. A cold window is loaded with a single
+ * limited, indexed query; afterwards the window lives in a bounded LRU and
+ * follow-up turns cost no query at all. Questions are remembered without the
+ * retrieved context the augmentor appended to them, as in the table, so a hot and
+ * a cold window of the same chat hold the same messages and earlier turns'
+ * context is not sent again.
+ */
+@Component
+@Slf4j
+public class PersistentChatMemoryStore implements ChatMemoryStore {
+
+    private static final String CONTEXT_SEPARATOR = "\n\nAnswer using the following information:\n";
+
+    /**
+     * How retrieved contents are appended to a question; the augmentor must use
+     * this template for the context to be stripped again before it is remembered.
+     */
+    public static final PromptTemplate CONTEXT_PROMPT =
+            PromptTemplate.from("{{userMessage}}" + CONTEXT_SEPARATOR + "{{contents}}");
+
+    private final ChatMessageRepository messageRepository;
+    private final ChatMessageWriter messageWriter;
+    private final int maxMessages;
+    private final Cache<String, List<ChatMessage>> hotWindows;
+
+    public PersistentChatMemoryStore(ChatMessageRepository messageRepository,
+            ChatMessageWriter messageWriter,
+            MeterRegistry meterRegistry,
+            @Value("${course.rag.memory.max-messages:10}") int maxMessages,
+            @Value("${course.rag.memory.hot-windows:1000}") long hotWindowCount) {
+        this.messageRepository = messageRepository;
+        this.messageWriter = messageWriter;
+        this.maxMessages = maxMessages;
+        this.hotWindows = Caffeine.newBuilder()
+                .maximumSize(hotWindowCount)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, hotWindows, "course.memory.windows");
+    }
+
+    /**
+     * Window-bounded memory for one chat; the prompt never carries more than
+     * {@code course.rag.memory.max-messages} messages, however long the chat gets.
+     */
+    public ChatMemory memoryFor(Object memoryId) {
+        return MessageWindowChatMemory.builder()
+                .id(memoryId)
+                .maxMessages(maxMessages)
+                .chatMemoryStore(this)
+                .build();
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(Object memoryId) {
+        String chatId = memoryId.toString();
+        List<ChatMessage> window = hotWindows.getIfPresent(chatId);
+        if (window != null) {
+            return window;
+        }
+        // Loaded outside the cache: Caffeine's compute holds a monitor, and a JDBC
+        // query inside it would pin a virtual thread to its carrier. A window put by
+        // updateMessages in the meantime is newer, so it wins.
+        window = loadWindow(chatId);
+        List<ChatMessage> existing = hotWindows.asMap().putIfAbsent(chatId, window);
+        return existing != null ? existing : window;
+    }
+
+    @Override
+    public void updateMessages(Object memoryId, List<ChatMessage> messages) {
+        hotWindows.put(memoryId.toString(),
+                messages.stream().map(PersistentChatMemoryStore::withoutRetrievedContext).toList());
+    }
+
+    /**
+     * The question as the user asked it, without the contents added by
+     * {@link #CONTEXT_PROMPT}.
+     */
+    static ChatMessage withoutRetrievedContext(ChatMessage message) {
+        if (!(message instanceof UserMessage user) || !user.hasSingleText()) {
+            return message;
+        }
+        String text = user.singleText();
+        int context = text.indexOf(CONTEXT_SEPARATOR);
+        if (context < 0) {
+            return message;
+        }
+        String question = text.substring(0, context);
+        return user.name() != null ? UserMessage.from(user.name(), question) : UserMessage.from(question);
+    }
+
+    @Override
+    public void deleteMessages(Object memoryId) {
+        hotWindows.invalidate(memoryId.toString());
+    }
+
+    /**
+     * Records a turn that was answered without going through the AI service (e.g. a
+     * cached answer) so a hot window stays in step with chat_messages.
+     */
+    public void appendTurn(Object memoryId, String userMessage, String aiMessage) {
+        hotWindows.asMap().computeIfPresent(memoryId.toString(), (id, window) -> {
+            List<ChatMessage> updated = new ArrayList<>(window);
+            updated.add(UserMessage.from(userMessage));
+            updated.add(AiMessage.from(aiMessage));
+            // Drop the oldest non-system messages beyond the window
+            while (updated.size() > maxMessages) {
+                int oldest = updated.get(0) instanceof SystemMessage ? 1 : 0;
+                updated.remove(oldest);
+            }
+            return List.copyOf(updated);
+        });
+    }
+
+    private List<ChatMessage> loadWindow(String chatId) {
+        // Includes messages still queued for write-behind, such as the turn being answered
+        List<org.mql.coursebackend.entity.ChatMessage> rows = new ArrayList<>(messageWriter.withPending(chatId, () -> {
+            List<org.mql.coursebackend.entity.ChatMessage> latest = new ArrayList<>(
+                    messageRepository.findByChatIdOrderByCreatedAtDesc(chatId, PageRequest.of(0, maxMessages)));
+            Collections.reverse(latest);
+            return latest;
+        }));
+        if (rows.size() > maxMessages) {
+            rows = new ArrayList<>(rows.subList(rows.size() - maxMessages, rows.size()));
+        }
+
+        // The newest USER row is the turn being answered right now; the AI service
+        // appends that message itself, so leave it out of the loaded history.
+        if (!rows.isEmpty() && "USER".equals(rows.get(rows.size() - 1).getType())) {
+            rows.remove(rows.size() - 1);
+        }
+
+        List<ChatMessage> window = new ArrayList<>(rows.size());
+        for (org.mql.coursebackend.entity.ChatMessage row : rows) {
+            if (row.getContent() == null || row.getContent().isBlank()) {
+                continue;
+            }
+            if ("USER".equals(row.getType())) {
+                window.add(UserMessage.from(row.getContent()));
+            } else if ("AI".equals(row.getType())) {
+                window.add(AiMessage.from(row.getContent()));
+            }
+        }
+        log.debug("Loaded memory window for Chat ID {} with {} messages", chatId, window.size());
+        return List.copyOf(window);
+    }
+}
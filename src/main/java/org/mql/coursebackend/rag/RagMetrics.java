@@ -0,0 +1,83 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.model.output.TokenUsage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Meters for the chat request path.
+ * <p>
+ * Every stage is a {@code course.rag.stage} timer tagged with the stage name and
+ * published with a percentile histogram, so p95/p99 per stage can be computed
+ * in Prometheus.
+ */
+@Component
+public class RagMetrics {
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Timer> stageTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> retrievedChunks = new ConcurrentHashMap<>();
+    private final Counter promptTokens;
+    private final Counter completionTokens;
+
+    public RagMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.promptTokens = Counter.builder("course.llm.tokens").tag("type", "prompt")
+                .register(meterRegistry);
+        this.completionTokens = Counter.builder("course.llm.tokens").tag("type", "completion")
+                .register(meterRegistry);
+    }
+
+    public Timer stage(String stage) {
+        return stageTimers.computeIfAbsent(stage, name -> Timer.builder("course.rag.stage")
+                .tag("stage", name)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    public <T> T time(String stage, Supplier<T> step) {
+        return stage(stage).record(step);
+    }
+
+    public void time(String stage, Runnable step) {
+        stage(stage).record(step);
+    }
+
+    public void recordRetrieved(String mode, int chunks) {
+        retrievedChunks.computeIfAbsent(mode.toUpperCase(Locale.ROOT),
+                        name -> DistributionSummary.builder("course.rag.retrieved.chunks")
+                                .tag("mode", name)
+                                .register(meterRegistry))
+                .record(chunks);
+    }
+
+    /**
+     * Counts chat messages that were accepted but never written, by reason.
+     */
+    public void recordDroppedMessages(String reason, int count) {
+        Counter.builder("course.chat.messages.dropped")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    public void recordTokenUsage(TokenUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.inputTokenCount() != null) {
+            promptTokens.increment(usage.inputTokenCount());
+        }
+        if (usage.outputTokenCount() != null) {
+            completionTokens.increment(usage.outputTokenCount());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reranks an over-fetched candidate pool and keeps the best few.
+ * <p>
+ * Candidates are first fused across retrievers by reciprocal rank, then each one
+ * is rescored as a blend of the local {@link ContentScorer} and its retrieval
+ * rank. The top {@code maxResults} are kept; the token budget is applied later by
+ * {@link ContextAssembler}, once neighbouring chunks have been merged.
+ */
+@Slf4j
+public class RerankingContentAggregator implements ContentAggregator {
+
+    private static final double SCORER_WEIGHT = 0.6;
+
+    private final ContentScorer scorer;
+    private final int maxResults;
+
+    public RerankingContentAggregator(ContentScorer scorer, int maxResults) {
+        this.scorer = scorer;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        List<Content> selected = new ArrayList<>();
+        for (Map.Entry<Query, Collection<List<Content>>> entry : queryToContents.entrySet()) {
+            List<Content> candidates = HybridContentRetriever.fuse(new ArrayList<>(entry.getValue()), Integer.MAX_VALUE);
+            selected.addAll(rerank(entry.getKey().text(), candidates));
+        }
+        return selected;
+    }
+
+    private List<Content> rerank(String query, List<Content> candidates) {
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+        double[] relevance = scorer.score(query, candidates);
+        double[] combined = new double[candidates.size()];
+        for (int rank = 0; rank < candidates.size(); rank++) {
+            double rankPrior = 1.0 - (double) rank / candidates.size();
+            combined[rank] = SCORER_WEIGHT * relevance[rank] + (1 - SCORER_WEIGHT) * rankPrior;
+        }
+
+        List<Integer> order = new ArrayList<>(candidates.size());
+        for (int i = 0; i < candidates.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble((Integer i) -> combined[i]).reversed());
+
+        List<Content> kept = new ArrayList<>(Math.min(maxResults, order.size()));
+        for (int i : order.subList(0, Math.min(maxResults, order.size()))) {
+            kept.add(candidates.get(i));
+        }
+        log.debug("Reranked {} candidates down to {}", candidates.size(), kept.size());
+        return kept;
+    }
+}
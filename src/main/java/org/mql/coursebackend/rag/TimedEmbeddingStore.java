@@ -0,0 +1,55 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.List;
+
+/**
+ * Read-path view of an {@link EmbeddingStore} that times searches. Only handed
+ * to retrievers; writes and deletes go to the store bean directly.
+ */
+public class TimedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final EmbeddingStore<TextSegment> delegate;
+    private final Timer searchTimer;
+
+    public TimedEmbeddingStore(EmbeddingStore<TextSegment> delegate, Timer searchTimer) {
+        this.delegate = delegate;
+        this.searchTimer = searchTimer;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return searchTimer.record(() -> delegate.search(request));
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return delegate.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        delegate.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        return delegate.add(embedding, textSegment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return delegate.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        return delegate.addAll(embeddings, textSegments);
+    }
+}
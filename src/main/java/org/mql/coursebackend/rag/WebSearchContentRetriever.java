@@ -1,44 +1,138 @@
 package org.mql.coursebackend.rag;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.rag.content.Content;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.query.Query;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import org.mql.coursebackend.service.WebScraperService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class WebSearchContentRetriever implements ContentRetriever {
 
+    private static final int MAX_PAGE_TIMEOUT_MS = 5000;
+
     private final WebScraperService webScraperService;
+    private final ExecutorService webFetchExecutor;
+    private final Duration fetchDeadline;
+    private final int maxFetchesPerHost;
+    private final RagMetrics metrics;
+
+    // Per-host connection limits; idle hosts are dropped so the map stays small
+    private final Cache<String, Semaphore> hostPermits = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(Duration.ofMinutes(10))
+            .build();
+
+    public WebSearchContentRetriever(WebScraperService webScraperService,
+            @Qualifier("webFetchExecutor") ExecutorService webFetchExecutor,
+            @Value("${course.rag.web.fetch-deadline:8s}") Duration fetchDeadline,
+            @Value("${course.rag.web.max-fetches-per-host:2}") int maxFetchesPerHost,
+            RagMetrics metrics) {
+        this.webScraperService = webScraperService;
+        this.webFetchExecutor = webFetchExecutor;
+        this.fetchDeadline = fetchDeadline;
+        this.maxFetchesPerHost = maxFetchesPerHost;
+        this.metrics = metrics;
+    }
 
     @Override
     public List<Content> retrieve(Query query) {
         log.info("Web Retrieval for: {}", query.text());
         List<Content> contents = new ArrayList<>();
 
-        List<String> urls = webScraperService.search(query.text());
+        List<String> urls = metrics.time("web_search", () -> webScraperService.search(query.text()));
+        if (urls.isEmpty()) {
+            return contents;
+        }
+
+        // Pages are fetched concurrently; whatever has arrived by the deadline is used
+        long deadline = System.nanoTime() + fetchDeadline.toNanos();
+        List<Callable<String>> fetches = urls.stream()
+                .map(url -> (Callable<String>) () -> fetch(url, deadline))
+                .toList();
+
+        List<Future<String>> results;
+        try {
+            results = webFetchExecutor.invokeAll(fetches, fetchDeadline.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return contents;
+        }
 
-        for (String url : urls) {
-            String text = webScraperService.scrape(url);
+        for (int i = 0; i < urls.size(); i++) {
+            String text = completedText(results.get(i));
             if (!text.isEmpty()) {
                 Metadata metadata = new Metadata();
-                metadata.put("filename", url);
+                metadata.put("filename", urls.get(i));
                 metadata.put("chunk_index", "0");
                 TextSegment segment = TextSegment.from(text, metadata);
                 contents.add(Content.from(segment));
             }
         }
 
+        log.info("Web Retrieval fetched {} of {} pages", contents.size(), urls.size());
         return contents;
     }
+
+    private String fetch(String url, long deadline) throws InterruptedException {
+        Semaphore permits = hostPermits.get(hostOf(url), host -> new Semaphore(maxFetchesPerHost));
+        if (!permits.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+            log.info("Skipping URL {}: host busy until deadline", url);
+            return "";
+        }
+        try {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return "";
+            }
+            int timeout = (int) Math.min(MAX_PAGE_TIMEOUT_MS, remainingMs);
+            return metrics.time("web_scrape", () -> webScraperService.scrape(url, timeout));
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static String completedText(Future<String> future) {
+        if (!future.isDone() || future.isCancelled()) {
+            return "";
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException | CancellationException e) {
+            return "";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+    }
+
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : url;
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
 }
@@ -0,0 +1,25 @@
+package org.mql.coursebackend.repository;
+
+import org.mql.coursebackend.entity.CachedEmbedding;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface CachedEmbeddingRepository extends JpaRepository<CachedEmbedding, String> {
+
+    @Query("select e.createdAt from CachedEmbedding e order by e.createdAt desc")
+    List<LocalDateTime> findCreatedAtNewestFirst(Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("delete from CachedEmbedding e where e.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
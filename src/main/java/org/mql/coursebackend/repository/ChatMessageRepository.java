@@ -1,14 +1,54 @@
 package org.mql.coursebackend.repository;
 
+import org.mql.coursebackend.dto.ChatMessageSummary;
 import org.mql.coursebackend.entity.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
     List<ChatMessage> findByChatIdOrderByCreatedAtAsc(String chatId);
 
+    List<ChatMessage> findByChatIdOrderByCreatedAtDesc(String chatId, Pageable pageable);
+
+    // Keyset pages of one chat, newest first; both walk idx_chat_messages_chat_created_id
+    @Query("select new org.mql.coursebackend.dto.ChatMessageSummary(m.id, m.type, m.content, m.createdAt) "
+            + "from ChatMessage m where m.chatId = :chatId "
+            + "order by m.createdAt desc, m.id desc")
+    List<ChatMessageSummary> findSummaries(@Param("chatId") String chatId, Pageable pageable);
+
+    @Query("select new org.mql.coursebackend.dto.ChatMessageSummary(m.id, m.type, m.content, m.createdAt) "
+            + "from ChatMessage m where m.chatId = :chatId "
+            + "and (m.createdAt < :createdAt or (m.createdAt = :createdAt and m.id < :id)) "
+            + "order by m.createdAt desc, m.id desc")
+    List<ChatMessageSummary> findSummariesBefore(@Param("chatId") String chatId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Pageable pageable);
+
+    // Same pages with the content cut down in the database, so long answers are never read in full
+    @Query("select new org.mql.coursebackend.dto.ChatMessageSummary(m.id, m.type, "
+            + "substring(m.content, 1, :previewChars), m.createdAt) "
+            + "from ChatMessage m where m.chatId = :chatId "
+            + "order by m.createdAt desc, m.id desc")
+    List<ChatMessageSummary> findPreviews(@Param("chatId") String chatId, @Param("previewChars") int previewChars,
+            Pageable pageable);
+
+    @Query("select new org.mql.coursebackend.dto.ChatMessageSummary(m.id, m.type, "
+            + "substring(m.content, 1, :previewChars), m.createdAt) "
+            + "from ChatMessage m where m.chatId = :chatId "
+            + "and (m.createdAt < :createdAt or (m.createdAt = :createdAt and m.id < :id)) "
+            + "order by m.createdAt desc, m.id desc")
+    List<ChatMessageSummary> findPreviewsBefore(@Param("chatId") String chatId,
+            @Param("previewChars") int previewChars, @Param("createdAt") LocalDateTime createdAt,
+            @Param("id") Long id, Pageable pageable);
+
+    @Query("select max(m.id) from ChatMessage m")
+    Long findMaxId();
+
     void deleteByChatId(String chatId);
 }
@@ -1,12 +1,29 @@
 package org.mql.coursebackend.repository;
 
+import org.mql.coursebackend.dto.ChatSessionSummary;
 import org.mql.coursebackend.entity.ChatSession;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface ChatSessionRepository extends JpaRepository<ChatSession, String> {
     List<ChatSession> findAllByOrderByCreatedAtDesc();
+
+    // Keyset pages, newest first; both walk idx_chat_sessions_created_id
+    @Query("select new org.mql.coursebackend.dto.ChatSessionSummary(s.id, s.title, s.createdAt) "
+            + "from ChatSession s order by s.createdAt desc, s.id desc")
+    List<ChatSessionSummary> findSummaries(Pageable pageable);
+
+    @Query("select new org.mql.coursebackend.dto.ChatSessionSummary(s.id, s.title, s.createdAt) "
+            + "from ChatSession s "
+            + "where s.createdAt < :createdAt or (s.createdAt = :createdAt and s.id < :id) "
+            + "order by s.createdAt desc, s.id desc")
+    List<ChatSessionSummary> findSummariesBefore(@Param("createdAt") LocalDateTime createdAt, @Param("id") String id,
+            Pageable pageable);
 }
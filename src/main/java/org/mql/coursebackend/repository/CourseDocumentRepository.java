@@ -0,0 +1,21 @@
+package org.mql.coursebackend.repository;
+
+import org.mql.coursebackend.entity.CourseDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CourseDocumentRepository extends JpaRepository<CourseDocument, String> {
+    List<CourseDocument> findByChatIdOrderByUploadedAtAsc(String chatId);
+
+    List<CourseDocument> findByChatIdIsNullOrderByUploadedAtAsc();
+
+    long countByChatId(String chatId);
+
+    @Query("select e from CourseDocument d join d.embeddingIds e where d.id = :id")
+    List<String> findEmbeddingIds(@Param("id") String id);
+}
@@ -0,0 +1,15 @@
+package org.mql.coursebackend.repository;
+
+import org.mql.coursebackend.entity.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, String> {
+    List<IngestionJob> findByStatusInOrderByCreatedAtAsc(Collection<IngestionJob.Status> statuses);
+
+    long countByChatIdAndStatusIn(String chatId, Collection<IngestionJob.Status> statuses);
+}
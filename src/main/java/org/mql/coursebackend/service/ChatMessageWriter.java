@@ -0,0 +1,419 @@
+package org.mql.coursebackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.entity.ChatMessage;
+import org.mql.coursebackend.entity.ChatSession;
+import org.mql.coursebackend.rag.RagMetrics;
+import org.mql.coursebackend.repository.ChatMessageRepository;
+import org.mql.coursebackend.repository.ChatSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Writes chat messages, creating missing sessions on the way.
+ * <p>
+ * By default every message is written inline in its own short transaction. With
+ * {@code course.rag.persistence.write-behind.enabled=true} messages go into a
+ * bounded queue instead and a background thread inserts them in JDBC batches
+ * (sequence ids make the inserts batchable), so the chat request path does not
+ * touch the database. Until a message is written it is still visible through
+ * {@link #withPending}. A full queue falls back to an inline write, and the
+ * queue is drained on shutdown.
+ * <p>
+ * A batch that fails is written again one message at a time, so one bad message
+ * does not take its neighbours down with it; messages that still fail are
+ * retried on later runs and dropped, with an error, after
+ * {@code write-behind.max-attempts}. Writes always run in a transaction of their
+ * own, never in the caller's.
+ */
+@Component
+@Slf4j
+public class ChatMessageWriter {
+
+    // Must match the sequenceName and allocationSize of the ChatMessage id generator
+    private static final String ID_SEQUENCE = "chat_messages_seq";
+    private static final int ID_ALLOCATION_SIZE = 50;
+
+    private final ChatSessionRepository sessionRepository;
+    private final ChatMessageRepository messageRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final RagMetrics metrics;
+    private final boolean writeBehind;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final int maxAttempts;
+
+    private final BlockingQueue<ChatMessage> queue;
+    // Queued or in-flight messages per chat, for read-your-writes
+    private final Map<String, Queue<ChatMessage>> pending = new ConcurrentHashMap<>();
+    // Sessions known to exist, so most messages skip the existence check
+    private final Cache<String, Boolean> knownSessions;
+    // Recently deleted chats, whose late messages must not bring the session back
+    private final Cache<String, Boolean> deletedChats;
+    // Fair, so flush() gets in between two background batches
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    // Messages whose write failed, retried ahead of the queue; guarded by writeLock
+    private final List<FailedMessage> retries = new ArrayList<>();
+    private long lastRetry = System.nanoTime();
+    private volatile boolean running;
+    private Thread writer;
+
+    public ChatMessageWriter(ChatSessionRepository sessionRepository,
+            ChatMessageRepository messageRepository,
+            TransactionTemplate transactionTemplate,
+            JdbcTemplate jdbcTemplate,
+            RagMetrics metrics,
+            @Value("${course.rag.persistence.write-behind.enabled:false}") boolean writeBehind,
+            @Value("${course.rag.persistence.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${course.rag.persistence.write-behind.batch-size:50}") int batchSize,
+            @Value("${course.rag.persistence.write-behind.flush-interval:200ms}") Duration flushInterval,
+            @Value("${course.rag.persistence.write-behind.max-attempts:3}") int maxAttempts,
+            @Value("${course.rag.persistence.known-sessions:10000}") long knownSessionCount,
+            @Value("${course.rag.persistence.deleted-chat-retention:10m}") Duration deletedChatRetention) {
+        this.sessionRepository = sessionRepository;
+        this.messageRepository = messageRepository;
+        // A failed write must not mark the caller's transaction rollback-only
+        this.transactionTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.jdbcTemplate = jdbcTemplate;
+        this.metrics = metrics;
+        this.writeBehind = writeBehind;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.maxAttempts = maxAttempts;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.knownSessions = Caffeine.newBuilder().maximumSize(knownSessionCount).build();
+        this.deletedChats = Caffeine.newBuilder().expireAfterWrite(deletedChatRetention).build();
+    }
+
+    @PostConstruct
+    public void start() {
+        alignIdSequence();
+        if (!writeBehind) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "chat-message-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Write-behind chat message persistence enabled (batch size {}, flush interval {})",
+                batchSize, flushInterval);
+    }
+
+    /**
+     * Rows written while ids still came from an identity column (or by another
+     * allocation) may be above the sequence; move it past them. A sequence that
+     * is already ahead of every row is left alone.
+     */
+    private void alignIdSequence() {
+        Long maxId = messageRepository.findMaxId();
+        if (maxId == null) {
+            return;
+        }
+        try {
+            List<Long> next = jdbcTemplate.queryForList(
+                    "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE SEQUENCE_NAME = ?",
+                    Long.class, ID_SEQUENCE.toUpperCase(Locale.ROOT));
+            if (next.isEmpty() || next.get(0) == null || maxId < next.get(0)) {
+                return;
+            }
+            long restart = maxId + ID_ALLOCATION_SIZE + 1;
+            jdbcTemplate.execute("ALTER SEQUENCE " + ID_SEQUENCE + " RESTART WITH " + restart);
+            log.info("Moved {} past existing chat messages to {}", ID_SEQUENCE, restart);
+        } catch (DataAccessException e) {
+            log.warn("Could not align {} with existing chat messages: {}", ID_SEQUENCE, e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the message, or queues it in write-behind mode. Either way it shows
+     * up in {@link #withPending} as soon as this returns. Messages of a chat
+     * deleted through {@link #forgetSession} are dropped.
+     */
+    public ChatMessage write(ChatMessage message) {
+        if (isDeleted(message.getChatId())) {
+            log.warn("Dropping {} message for deleted chat {}", message.getType(), message.getChatId());
+            metrics.recordDroppedMessages("deleted_chat", 1);
+            return message;
+        }
+        if (message.getCreatedAt() == null) {
+            // Stamped now, not at insert time, so queued messages keep their order
+            message.setCreatedAt(LocalDateTime.now());
+        }
+        if (running) {
+            pending.compute(message.getChatId(), (chatId, messages) -> {
+                Queue<ChatMessage> queued = messages != null ? messages : new ConcurrentLinkedQueue<>();
+                queued.add(message);
+                return queued;
+            });
+            if (queue.offer(message)) {
+                return message;
+            }
+            // Queue full: the caller pays for the insert, which throttles bursts
+            try {
+                persist(List.of(message));
+            } finally {
+                unpend(List.of(message));
+            }
+            return message;
+        }
+        persist(List.of(message));
+        return message;
+    }
+
+    /**
+     * Stored messages of a chat merged with those not yet written, oldest first.
+     */
+    public List<ChatMessage> withPending(String chatId, Supplier<List<ChatMessage>> stored) {
+        // Snapshot the pending ones first: a message written in between is then found in the table
+        List<ChatMessage> unwritten = pending(chatId);
+        List<ChatMessage> rows = stored.get();
+        if (unwritten.isEmpty()) {
+            return rows;
+        }
+        Set<Long> storedIds = new HashSet<>();
+        for (ChatMessage row : rows) {
+            storedIds.add(row.getId());
+        }
+        List<ChatMessage> merged = new ArrayList<>(rows);
+        for (ChatMessage message : unwritten) {
+            if (message.getId() == null || !storedIds.contains(message.getId())) {
+                merged.add(message);
+            }
+        }
+        merged.sort(Comparator.comparing(ChatMessage::getCreatedAt));
+        return merged;
+    }
+
+    /**
+     * Messages of a chat accepted but not yet written, in the order they were
+     * accepted. Take this snapshot before querying the table, as
+     * {@link #withPending} does, and drop the ones the query already returned.
+     */
+    public List<ChatMessage> pending(String chatId) {
+        Queue<ChatMessage> queued = pending.get(chatId);
+        return queued != null ? List.copyOf(queued) : List.of();
+    }
+
+    /**
+     * Writes everything queued so far before returning.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            // Earlier failures get one more attempt
+            persistQueued(List.of(), true);
+            List<ChatMessage> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                persistQueued(batch, false);
+                batch = new ArrayList<>(batchSize);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Marks the chat as deleted: messages for it that are still queued, or that
+     * arrive later (an answer still streaming, say), are no longer written.
+     */
+    public void forgetSession(String chatId) {
+        deletedChats.put(chatId, Boolean.TRUE);
+        knownSessions.invalidate(chatId);
+    }
+
+    private boolean isDeleted(String chatId) {
+        return deletedChats.getIfPresent(chatId) != null;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            // Not interrupted: an interrupt inside a JDBC call can close an H2 file database
+            writer.join(flushInterval.toMillis() + 10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        writeLock.lock();
+        try {
+            if (!retries.isEmpty()) {
+                log.error("{} chat messages could not be written before shutdown", retries.size());
+                metrics.recordDroppedMessages("write_failed", retries.size());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Chat message writer stopped");
+    }
+
+    private void writeLoop() {
+        while (running) {
+            writeLock.lock();
+            try {
+                ChatMessage first = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                // Failures are retried at most once per flush interval, not with every batch
+                boolean retry = !retries.isEmpty() && System.nanoTime() - lastRetry >= flushInterval.toNanos();
+                if (first == null && !retry) {
+                    continue;
+                }
+                List<ChatMessage> batch = new ArrayList<>(batchSize);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                persistQueued(batch, retry);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private record FailedMessage(ChatMessage message, int attempts) {
+    }
+
+    /**
+     * Writes a batch taken from the queue, preceded by the earlier failures when
+     * {@code retry} is set. Called with {@link #writeLock} held.
+     */
+    private void persistQueued(List<ChatMessage> batch, boolean retry) {
+        List<FailedMessage> work = new ArrayList<>(batch.size() + (retry ? retries.size() : 0));
+        if (retry) {
+            work.addAll(retries);
+            retries.clear();
+            lastRetry = System.nanoTime();
+        }
+        batch.forEach(message -> work.add(new FailedMessage(message, 0)));
+
+        List<FailedMessage> live = new ArrayList<>(work.size());
+        List<ChatMessage> deleted = new ArrayList<>();
+        for (FailedMessage entry : work) {
+            if (isDeleted(entry.message().getChatId())) {
+                deleted.add(entry.message());
+            } else {
+                live.add(entry);
+            }
+        }
+        if (!deleted.isEmpty()) {
+            log.warn("Dropping {} queued messages of deleted chats", deleted.size());
+            metrics.recordDroppedMessages("deleted_chat", deleted.size());
+            unpend(deleted);
+        }
+        if (live.isEmpty()) {
+            return;
+        }
+        List<ChatMessage> messages = live.stream().map(FailedMessage::message).toList();
+        try {
+            persist(messages);
+            unpend(messages);
+        } catch (RuntimeException e) {
+            log.warn("Failed to write {} queued chat messages, writing them one by one: {}",
+                    messages.size(), e.getMessage());
+            // Rolled back, but the entities may keep the ids assigned before the failure
+            messages.forEach(message -> message.setId(null));
+            live.forEach(this::persistOne);
+        }
+    }
+
+    private void persistOne(FailedMessage entry) {
+        ChatMessage message = entry.message();
+        try {
+            persist(List.of(message));
+            unpend(List.of(message));
+        } catch (RuntimeException e) {
+            message.setId(null);
+            int attempts = entry.attempts() + 1;
+            if (attempts < maxAttempts) {
+                retries.add(new FailedMessage(message, attempts));
+                return;
+            }
+            log.error("Dropping {} message of chat {} after {} failed writes: {}", message.getType(),
+                    message.getChatId(), attempts, e.getMessage(), e);
+            metrics.recordDroppedMessages("write_failed", 1);
+            unpend(List.of(message));
+        }
+    }
+
+    private void persist(List<ChatMessage> batch) {
+        Set<String> checked = metrics.time("message_batch_persist", () -> transactionTemplate.execute(status -> {
+            Set<String> sessions = ensureSessions(batch);
+            messageRepository.saveAll(batch);
+            return sessions;
+        }));
+        // Only after commit, so a rolled-back session is not remembered as existing
+        checked.forEach(chatId -> knownSessions.put(chatId, Boolean.TRUE));
+    }
+
+    private Set<String> ensureSessions(List<ChatMessage> batch) {
+        Set<String> unknown = new LinkedHashSet<>();
+        for (ChatMessage message : batch) {
+            if (knownSessions.getIfPresent(message.getChatId()) == null) {
+                unknown.add(message.getChatId());
+            }
+        }
+        if (unknown.isEmpty()) {
+            return unknown;
+        }
+        metrics.time("session_check", () -> {
+            Set<String> existing = new HashSet<>();
+            sessionRepository.findAllById(unknown).forEach(session -> existing.add(session.getId()));
+            List<ChatSession> created = new ArrayList<>();
+            for (String chatId : unknown) {
+                if (!existing.contains(chatId)) {
+                    log.info("Chat ID {} not found, creating new session.", chatId);
+                    created.add(ChatSession.builder()
+                            .id(chatId)
+                            .title("Chat " + chatId.substring(0, Math.min(8, chatId.length())))
+                            .build());
+                }
+            }
+            sessionRepository.saveAll(created);
+        });
+        return unknown;
+    }
+
+    private void unpend(List<ChatMessage> batch) {
+        for (ChatMessage message : batch) {
+            pending.computeIfPresent(message.getChatId(), (chatId, messages) -> {
+                messages.remove(message);
+                return messages.isEmpty() ? null : messages;
+            });
+        }
+    }
+}
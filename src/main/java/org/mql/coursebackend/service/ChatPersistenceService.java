@@ -0,0 +1,163 @@
+package org.mql.coursebackend.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.dto.ChatMessageSummary;
+import org.mql.coursebackend.dto.CursorPage;
+import org.mql.coursebackend.entity.ChatMessage;
+import org.mql.coursebackend.rag.RagMetrics;
+import org.mql.coursebackend.repository.ChatMessageRepository;
+import org.mql.coursebackend.repository.ChatSessionRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Short, self-contained persistence steps of the chat pipeline.
+ * <p>
+ * Each method runs in its own transaction (or, for messages in write-behind
+ * mode, none at all; see {@link ChatMessageWriter}) so that no JDBC connection
+ * is held while {@link ChatService} waits on retrieval and the LLM.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChatPersistenceService {
+
+    // Keyset order of the history pages; a message not yet written has no id and sorts as the newest
+    private static final Comparator<ChatMessageSummary> NEWEST_FIRST = Comparator
+            .comparing(ChatMessageSummary::getCreatedAt)
+            .thenComparing(ChatPersistenceService::idKey)
+            .reversed();
+
+    private final ChatSessionRepository sessionRepository;
+    private final ChatMessageRepository messageRepository;
+    private final ChatMessageWriter messageWriter;
+    private final RagMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+
+    // The writer creates the session if this is the chat's first message
+    public ChatMessage recordUserMessage(String chatId, String message) {
+        ChatMessage userMsg = ChatMessage.builder()
+                .chatId(chatId)
+                .type("USER")
+                .content(message)
+                .build();
+        return metrics.time("user_message_persist", () -> messageWriter.write(userMsg));
+    }
+
+    public void deleteChat(String chatId) {
+        // Tombstoned first: queued or late messages of this chat are dropped, not written after it is gone
+        messageWriter.forgetSession(chatId);
+        // Outside the delete transaction, which would otherwise hold a connection while the queue drains
+        messageWriter.flush();
+        transactionTemplate.executeWithoutResult(status -> {
+            messageRepository.deleteByChatId(chatId);
+            sessionRepository.deleteById(chatId);
+        });
+    }
+
+    public ChatMessage recordAiMessage(String chatId, String answer) {
+        ChatMessage aiMsg = ChatMessage.builder()
+                .chatId(chatId)
+                .type("AI")
+                .content(answer)
+                .build();
+        return metrics.time("response_persist", () -> messageWriter.write(aiMsg));
+    }
+
+    /**
+     * Full history of a chat, including messages accepted but not yet written.
+     */
+    public List<ChatMessage> chatHistory(String chatId) {
+        return messageWriter.withPending(chatId, () -> messageRepository.findByChatIdOrderByCreatedAtAsc(chatId));
+    }
+
+    /**
+     * {@code size} messages of a chat walking back from {@code cursor}, returned
+     * oldest first, with messages accepted but not yet written merged in the
+     * way {@link #chatHistory} does. With {@code previewChars > 0} only that
+     * many characters of each message are read. Throws
+     * {@link IllegalArgumentException} for a malformed cursor.
+     */
+    public CursorPage<ChatMessageSummary> chatHistoryPage(String chatId, String cursor, int size, int previewChars) {
+        // One extra row tells whether another page follows
+        Pageable window = PageRequest.of(0, size + 1);
+        PageCursor before = cursor == null || cursor.isBlank() ? null : PageCursor.decode(cursor);
+        Long beforeId = before != null ? Long.valueOf(before.id()) : null;
+        // Snapshot the pending ones first: a message written in between is then found in the table
+        List<ChatMessage> unwritten = messageWriter.pending(chatId);
+        List<ChatMessageSummary> rows;
+        if (previewChars > 0) {
+            rows = before == null
+                    ? messageRepository.findPreviews(chatId, previewChars, window)
+                    : messageRepository.findPreviewsBefore(chatId, previewChars, before.createdAt(), beforeId, window);
+        } else {
+            rows = before == null
+                    ? messageRepository.findSummaries(chatId, window)
+                    : messageRepository.findSummariesBefore(chatId, before.createdAt(), beforeId, window);
+        }
+        if (!unwritten.isEmpty()) {
+            rows = mergePending(rows, unwritten, before, previewChars);
+        }
+        boolean more = rows.size() > size;
+        List<ChatMessageSummary> items = new ArrayList<>(more ? rows.subList(0, size) : rows);
+        String nextCursor = null;
+        if (more) {
+            ChatMessageSummary oldest = items.get(items.size() - 1);
+            // A page ending on a message not yet written continues strictly before its timestamp,
+            // so the message is not listed again once the writer has given it an id
+            long oldestId = oldest.getId() != null ? oldest.getId() : 0L;
+            nextCursor = new PageCursor(oldest.getCreatedAt(), String.valueOf(oldestId)).encode();
+        }
+        Collections.reverse(items);
+        return new CursorPage<>(items, nextCursor);
+    }
+
+    private static List<ChatMessageSummary> mergePending(List<ChatMessageSummary> rows, List<ChatMessage> unwritten,
+            PageCursor before, int previewChars) {
+        Set<Long> storedIds = new HashSet<>();
+        for (ChatMessageSummary row : rows) {
+            storedIds.add(row.getId());
+        }
+        List<ChatMessageSummary> merged = new ArrayList<>(rows);
+        for (ChatMessage message : unwritten) {
+            if (message.getId() != null && storedIds.contains(message.getId())) {
+                continue;
+            }
+            ChatMessageSummary summary = new ChatMessageSummary(message.getId(), message.getType(),
+                    preview(message.getContent(), previewChars), message.getCreatedAt());
+            if (before == null || isBefore(summary, before)) {
+                merged.add(summary);
+            }
+        }
+        merged.sort(NEWEST_FIRST);
+        return merged;
+    }
+
+    // Same condition as the keyset queries
+    private static boolean isBefore(ChatMessageSummary message, PageCursor cursor) {
+        int byTime = message.getCreatedAt().compareTo(cursor.createdAt());
+        return byTime < 0 || (byTime == 0 && idKey(message) < Long.parseLong(cursor.id()));
+    }
+
+    private static long idKey(ChatMessageSummary message) {
+        return message.getId() != null ? message.getId() : Long.MAX_VALUE;
+    }
+
+    private static String preview(String content, int previewChars) {
+        if (previewChars <= 0 || content == null || content.length() <= previewChars) {
+            return content;
+        }
+        return content.substring(0, previewChars);
+    }
+}
@@ -1,67 +1,137 @@
 package org.mql.coursebackend.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.chat.ChatLanguageModel;
+import dev.langchain4j.model.chat.StreamingChatLanguageModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.filter.Filter;
 import jakarta.annotation.PostConstruct;
 import dev.langchain4j.service.Result;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
 
+import org.mql.coursebackend.dto.ChatMessageSummary;
 import org.mql.coursebackend.dto.ChatResponse;
+import org.mql.coursebackend.dto.ChatSessionSummary;
+import org.mql.coursebackend.dto.CursorPage;
 import org.mql.coursebackend.entity.ChatMessage;
 import org.mql.coursebackend.entity.ChatSession;
+import org.mql.coursebackend.rag.Bm25Index;
+import org.mql.coursebackend.rag.HybridContentRetriever;
+import org.mql.coursebackend.rag.PersistentChatMemoryStore;
+import org.mql.coursebackend.rag.RagMetrics;
+import org.mql.coursebackend.rag.TimedEmbeddingStore;
 import org.mql.coursebackend.rag.WebSearchContentRetriever;
-import org.mql.coursebackend.repository.ChatMessageRepository;
 import org.mql.coursebackend.repository.ChatSessionRepository;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
 
 @Service
 @Slf4j
-@Transactional
 public class ChatService {
 
     private final ChatLanguageModel chatLanguageModel;
+    private final StreamingChatLanguageModel streamingChatLanguageModel;
     private final EmbeddingStore<TextSegment> embeddingStore;
     private final EmbeddingModel embeddingModel;
 
     private final ChatSessionRepository sessionRepository;
-    private final ChatMessageRepository messageRepository;
+    private final ChatPersistenceService persistenceService;
+    private final EmbeddingCleanupService embeddingCleanupService;
 
     private final WebSearchContentRetriever webRetriever;
+    private final Bm25Index lexicalIndex;
+    private final PersistentChatMemoryStore chatMemoryStore;
+    private final SemanticAnswerCache answerCache;
+    private final ContentAggregator contentAggregator;
+    private final RagMetrics metrics;
 
-    private final Map<String, CourseAgent> agentCache = new ConcurrentHashMap<>();
+    // Bounded by size and idle time; one agent per (chat, mode)
+    private final Cache<AgentKey, CourseAgent> agentCache;
+
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final String STREAM_ERROR_MESSAGE = "I apologize, but I encountered an error while processing your request. Please try again.";
 
     @Value("${course.rag.system-prompt}")
     private String systemPrompt;
 
+    // With reranking on, retrievers over-fetch this many candidates for the aggregator to cut down
+    @Value("${course.rag.rerank.enabled:true}")
+    private boolean rerankEnabled;
+
+    @Value("${course.rag.rerank.candidates:20}")
+    private int rerankCandidates;
+
     public ChatService(ChatLanguageModel chatLanguageModel,
+            StreamingChatLanguageModel streamingChatLanguageModel,
             EmbeddingStore<TextSegment> embeddingStore,
-            EmbeddingModel embeddingModel,
+            @Qualifier("queryEmbeddingModel") EmbeddingModel embeddingModel,
             ChatSessionRepository sessionRepository,
-            ChatMessageRepository messageRepository,
-            WebSearchContentRetriever webRetriever) {
+            ChatPersistenceService persistenceService,
+            EmbeddingCleanupService embeddingCleanupService,
+            WebSearchContentRetriever webRetriever,
+            Bm25Index lexicalIndex,
+            PersistentChatMemoryStore chatMemoryStore,
+            SemanticAnswerCache answerCache,
+            ContentAggregator contentAggregator,
+            RagMetrics metrics,
+            MeterRegistry meterRegistry,
+            @Value("${course.rag.agent-cache.max-size:1000}") long agentCacheMaxSize,
+            @Value("${course.rag.agent-cache.expire-after-access:30m}") Duration agentCacheExpireAfterAccess) {
 
         this.chatLanguageModel = chatLanguageModel;
-        this.embeddingStore = embeddingStore;
+        this.streamingChatLanguageModel = streamingChatLanguageModel;
+        // Retrievers search through this view so vector search time is measured on its own
+        this.embeddingStore = new TimedEmbeddingStore(embeddingStore, metrics.stage("vector_search"));
         this.embeddingModel = embeddingModel;
         this.sessionRepository = sessionRepository;
-        this.messageRepository = messageRepository;
+        this.persistenceService = persistenceService;
+        this.embeddingCleanupService = embeddingCleanupService;
         this.webRetriever = webRetriever;
+        this.lexicalIndex = lexicalIndex;
+        this.chatMemoryStore = chatMemoryStore;
+        this.answerCache = answerCache;
+        this.contentAggregator = contentAggregator;
+        this.metrics = metrics;
+
+        this.agentCache = Caffeine.newBuilder()
+                .maximumSize(agentCacheMaxSize)
+                .expireAfterAccess(agentCacheExpireAfterAccess)
+                .recordStats()
+                .removalListener((AgentKey key, CourseAgent agent, RemovalCause cause) ->
+                        log.debug("Agent evicted for key: {} ({})", key, cause))
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, agentCache, "course.agents");
 
         log.info("ChatService initialized with RAG capabilities and Web Search");
     }
@@ -71,36 +141,55 @@ public class ChatService {
         log.info("Loaded System Prompt: [{}]", systemPrompt);
     }
 
+    private record AgentKey(String chatId, String mode) {
+    }
+
     private CourseAgent getOrCreateAgent(String chatId, String mode) {
-        String cacheKey = chatId + "_" + mode;
-        if (agentCache.containsKey(cacheKey)) {
-            // log.info("Agent Cache HIT for key: {}", cacheKey);
-            return agentCache.get(cacheKey);
-        }
+        AgentKey cacheKey = new AgentKey(chatId, mode.toUpperCase(Locale.ROOT));
+        // Atomic per key: concurrent first requests for a chat build a single agent
+        return agentCache.get(cacheKey, this::createAgent);
+    }
+
+    private CourseAgent createAgent(AgentKey cacheKey) {
         log.info("Agent Cache MISS for key: {} - Creating new Agent", cacheKey);
 
-        ContentRetriever retriever = createRetriever(chatId, mode);
+        ContentRetriever retriever = createRetriever(cacheKey.chatId(), cacheKey.mode());
 
         // Build the agent with the specific retriever and system prompt
-        CourseAgent agent = AiServices.builder(CourseAgent.class)
+        return AiServices.builder(CourseAgent.class)
                 .chatLanguageModel(chatLanguageModel)
-                .contentRetriever(retriever)
+                .streamingChatLanguageModel(streamingChatLanguageModel)
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .contentRetriever(retriever)
+                        .contentAggregator(contentAggregator)
+                        .contentInjector(new DefaultContentInjector(PersistentChatMemoryStore.CONTEXT_PROMPT))
+                        .build())
+                .chatMemoryProvider(chatMemoryStore::memoryFor)
                 .systemMessageProvider(memoryId -> systemPrompt)
                 .build();
-
-        agentCache.put(cacheKey, agent);
-        return agent;
     }
 
     private ContentRetriever createRetriever(String chatId, String mode) {
+        int candidates = rerankEnabled ? rerankCandidates : 5;
         if ("WEB".equalsIgnoreCase(mode)) {
             return webRetriever;
+        } else if ("HYBRID".equalsIgnoreCase(mode)) {
+            // Dense and BM25 candidates fused by reciprocal rank; the lexical side
+            // catches exact identifiers that fall under the dense minScore
+            ContentRetriever dense = EmbeddingStoreContentRetriever.builder()
+                    .embeddingStore(embeddingStore)
+                    .embeddingModel(embeddingModel)
+                    .maxResults(Math.max(10, candidates))
+                    .minScore(0.5)
+                    .filter(metadataKey("chatId").isEqualTo(chatId))
+                    .build();
+            return new HybridContentRetriever(dense, lexicalIndex, chatId, Math.max(10, candidates), candidates);
         } else {
             Filter chatFilter = metadataKey("chatId").isEqualTo(chatId);
             return EmbeddingStoreContentRetriever.builder()
                     .embeddingStore(embeddingStore)
                     .embeddingModel(embeddingModel)
-                    .maxResults(5) // Increased from 3 to 5 for better context
+                    .maxResults(candidates)
                     .minScore(0.5)
                     // .filter(chatFilter) // If documents are global, remove this.
                     .filter(chatFilter)
@@ -123,14 +212,59 @@ public class ChatService {
     }
 
     public List<ChatMessage> getChatHistory(String chatId) {
-        return messageRepository.findByChatIdOrderByCreatedAtAsc(chatId);
+        return persistenceService.chatHistory(chatId);
+    }
+
+    /**
+     * Sessions newest first, {@code limit} at a time. Throws
+     * {@link IllegalArgumentException} for a malformed cursor.
+     */
+    public CursorPage<ChatSessionSummary> getChatPage(String cursor, int limit) {
+        int size = pageSize(limit);
+        // One extra row tells whether another page follows
+        Pageable window = PageRequest.of(0, size + 1);
+        List<ChatSessionSummary> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = sessionRepository.findSummaries(window);
+        } else {
+            PageCursor after = PageCursor.decode(cursor);
+            rows = sessionRepository.findSummariesBefore(after.createdAt(), after.id(), window);
+        }
+        boolean more = rows.size() > size;
+        List<ChatSessionSummary> items = more ? rows.subList(0, size) : rows;
+        String nextCursor = null;
+        if (more) {
+            ChatSessionSummary last = items.get(items.size() - 1);
+            nextCursor = new PageCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return new CursorPage<>(new ArrayList<>(items), nextCursor);
+    }
+
+    /**
+     * Messages of a chat walking back from the most recent one; each page is
+     * returned oldest first so it can be prepended to what the client shows.
+     * Messages still queued by the write-behind writer are included.
+     */
+    public CursorPage<ChatMessageSummary> getChatHistoryPage(String chatId, String cursor, int limit,
+            int previewChars) {
+        return persistenceService.chatHistoryPage(chatId, cursor, pageSize(limit), previewChars);
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 
     public void deleteChat(String chatId) {
-        messageRepository.deleteByChatId(chatId);
-        sessionRepository.deleteById(chatId);
-        // Remove all agents for this chat from cache
-        agentCache.keySet().removeIf(k -> k.startsWith(chatId));
+        persistenceService.deleteChat(chatId);
+        // Vectors are removed outside the transaction; the orphan GC catches any failure here
+        try {
+            embeddingCleanupService.deleteChat(chatId);
+        } catch (RuntimeException e) {
+            log.warn("Could not remove embeddings of chat {}: {}", chatId, e.getMessage());
+        }
+        // Remove all agents for this chat from cache (exact chat id, any mode)
+        agentCache.asMap().keySet().removeIf(k -> k.chatId().equals(chatId));
+        chatMemoryStore.deleteMessages(chatId);
     }
 
     public ChatSession updateChatTitle(String chatId, String newTitle) {
@@ -145,26 +279,21 @@ public class ChatService {
         try {
             log.info("Processing chat request - Chat ID: {}, Message: {}, Mode: {}", chatId, message, mode);
 
-            // Ensure chat exists
-            if (!sessionRepository.existsById(chatId)) {
-                log.info("Chat ID {} not found, creating new session.", chatId);
-                ChatSession session = ChatSession.builder().id(chatId).title("Chat " + chatId.substring(0, 8)).build();
-                sessionRepository.save(session);
-            }
+            // 1. Ensure chat exists and save User Message (own short transaction)
+            persistenceService.recordUserMessage(chatId, message);
 
-            // 1. Save User Message
-            ChatMessage userMsg = ChatMessage.builder()
-                    .chatId(chatId)
-                    .type("USER")
-                    .content(message)
-                    .build();
-            messageRepository.save(userMsg);
+            // Reuse a cached answer to a near-identical question, if retrieval agrees
+            AnswerLookup lookup = lookupCachedAnswer(chatId, mode, message);
+            if (lookup != null && lookup.cached() != null) {
+                return answerFromCache(chatId, message, lookup.cached(), startTime);
+            }
 
             // Get chat-specific agent
             CourseAgent agent = getOrCreateAgent(chatId, mode);
 
             // 2. Generate Answer using Native RAG
             // The agent will handle retrieval, prompt construction, and LLM call.
+            // No transaction is open here, so no pooled connection is held during generation.
             log.info("Delegating to Agent...");
 
             Result<String> result = agent.chat(chatId, message);
@@ -172,43 +301,30 @@ public class ChatService {
             String answer = result.content();
             log.info("Generated Answer: {}", answer);
 
-            // 3. Save AI Response
-            ChatMessage aiMsg = ChatMessage.builder()
-                    .chatId(chatId)
-                    .type("AI")
-                    .content(answer)
-                    .build();
-            messageRepository.save(aiMsg);
+            // 3. Save AI Response (own short transaction)
+            persistenceService.recordAiMessage(chatId, answer);
 
             // 4. Extract Sources from Result
-            List<ChatResponse.SourceDocument> sources = new ArrayList<>();
-            if (result.sources() != null && !isAnswerNegative(answer)) {
-                sources = result.sources().stream()
-                        .map(content -> {
-                            TextSegment segment = content.textSegment();
-                            String filename = segment.metadata().getString("filename");
-                            String chunkIndexStr = segment.metadata().getString("chunk_index");
-                            int chunkIndex = chunkIndexStr != null ? Integer.parseInt(chunkIndexStr) : 0;
-
-                            String text = segment.text();
-                            String excerpt = text.length() > 200 ? text.substring(0, 200) + "..." : text;
-
-                            return ChatResponse.SourceDocument.builder()
-                                    .filename(filename != null ? filename : "Unknown")
-                                    .excerpt(excerpt)
-                                    .chunkIndex(chunkIndex)
-                                    .build();
-                        })
-                        .collect(Collectors.toList());
-            }
+            List<ChatResponse.SourceDocument> sources = metrics.time("source_mapping",
+                    () -> SourceDocumentMapper.toSourceDocuments(result.sources(), answer));
+            metrics.recordRetrieved(mode, result.sources() != null ? result.sources().size() : 0);
 
-            log.info("Generated response for Chat ID: {} with {} sources", chatId, sources.size());
+            Integer promptTokens = result.tokenUsage() != null ? result.tokenUsage().inputTokenCount() : null;
+            log.info("Generated response for Chat ID: {} with {} sources ({} prompt tokens)", chatId, sources.size(),
+                    promptTokens);
             log.info("Total request time: {} ms", System.currentTimeMillis() - startTime);
+            metrics.stage("total").record(Duration.ofMillis(System.currentTimeMillis() - startTime));
 
-            return ChatResponse.builder()
+            ChatResponse response = ChatResponse.builder()
                     .answer(answer)
                     .sources(sources)
+                    .promptTokens(promptTokens)
                     .build();
+            if (lookup != null) {
+                answerCache.put(chatId, lookup.questionVector(), chunkKeys(result.sources()), response,
+                        System.currentTimeMillis() - startTime);
+            }
+            return response;
 
         } catch (Exception e) {
             log.error("Error processing chat for Chat ID: {}", chatId, e);
@@ -219,13 +335,152 @@ public class ChatService {
         }
     }
 
-    private boolean isAnswerNegative(String answer) {
-        if (answer == null)
-            return true;
-        String lower = answer.toLowerCase();
-        return lower.contains("i cannot answer")
-                || (lower.contains("i cannot") && lower.contains("provided documents"))
-                || lower.contains("i cannot answer this question based on the provided documents")
-                || (lower.contains("don't know") && lower.contains("context"));
+    /**
+     * Streaming variant of {@link #chat}: tokens are pushed to the emitter as
+     * "token" events while the model generates, followed by a single "sources"
+     * event. The AI message is persisted once the stream has completed. On a
+     * failure the client gets an "error" event and the emitter is completed
+     * with the error.
+     */
+    public void streamChat(String chatId, String message, String mode, SseEmitter emitter) {
+        long startTime = System.currentTimeMillis();
+        try {
+            log.info("Processing streaming chat request - Chat ID: {}, Message: {}, Mode: {}", chatId, message, mode);
+
+            persistenceService.recordUserMessage(chatId, message);
+
+            AnswerLookup lookup = lookupCachedAnswer(chatId, mode, message);
+            if (lookup != null && lookup.cached() != null) {
+                ChatResponse cached = answerFromCache(chatId, message, lookup.cached(), startTime);
+                AtomicBoolean clientGone = new AtomicBoolean(false);
+                sendEvent(emitter, "token", Map.of("text", cached.getAnswer()), clientGone);
+                sendEvent(emitter, "sources", cached.getSources(), clientGone);
+                emitter.complete();
+                return;
+            }
+
+            CourseAgent agent = getOrCreateAgent(chatId, mode);
+
+            AtomicReference<List<Content>> retrieved = new AtomicReference<>(List.of());
+            AtomicBoolean firstToken = new AtomicBoolean(true);
+            AtomicBoolean clientGone = new AtomicBoolean(false);
+
+            agent.chatStream(chatId, message)
+                    .onRetrieved(contents -> {
+                        retrieved.set(contents);
+                        metrics.recordRetrieved(mode, contents.size());
+                    })
+                    .onNext(token -> {
+                        if (firstToken.compareAndSet(true, false)) {
+                            log.info("Time to first token: {} ms", System.currentTimeMillis() - startTime);
+                        }
+                        sendEvent(emitter, "token", Map.of("text", token), clientGone);
+                    })
+                    .onComplete(response -> {
+                        String answer = response.content().text();
+                        List<ChatResponse.SourceDocument> sources;
+                        try {
+                            persistenceService.recordAiMessage(chatId, answer);
+                            sources = metrics.time("source_mapping",
+                                    () -> SourceDocumentMapper.toSourceDocuments(retrieved.get(), answer));
+                        } catch (RuntimeException e) {
+                            // Without this the client would wait for a "sources" event that never comes
+                            log.error("Error while completing streamed chat for Chat ID: {}", chatId, e);
+                            sendEvent(emitter, "error", STREAM_ERROR_MESSAGE, clientGone);
+                            emitter.completeWithError(e);
+                            return;
+                        }
+                        sendEvent(emitter, "sources", sources, clientGone);
+                        emitter.complete();
+
+                        if (lookup != null) {
+                            answerCache.put(chatId, lookup.questionVector(), chunkKeys(retrieved.get()),
+                                    ChatResponse.builder().answer(answer).sources(sources).build(),
+                                    System.currentTimeMillis() - startTime);
+                        }
+
+                        log.info("Streamed response for Chat ID: {} with {} sources ({} prompt tokens)", chatId,
+                                sources.size(),
+                                response.tokenUsage() != null ? response.tokenUsage().inputTokenCount() : null);
+                        log.info("Total request time: {} ms", System.currentTimeMillis() - startTime);
+                        metrics.stage("total").record(Duration.ofMillis(System.currentTimeMillis() - startTime));
+                    })
+                    .onError(error -> {
+                        log.error("Error while streaming chat for Chat ID: {}", chatId, error);
+                        sendEvent(emitter, "error", STREAM_ERROR_MESSAGE, clientGone);
+                        // Ends the response as failed, not as a normal end of stream
+                        emitter.completeWithError(error);
+                    })
+                    .start();
+
+        } catch (Exception e) {
+            log.error("Error processing streaming chat for Chat ID: {}", chatId, e);
+            sendEvent(emitter, "error", STREAM_ERROR_MESSAGE, new AtomicBoolean(false));
+            emitter.completeWithError(e);
+        }
+    }
+
+    private record AnswerLookup(float[] questionVector, ChatResponse cached) {
+    }
+
+    /**
+     * Returns {@code null} when the answer cache does not apply; otherwise the
+     * question embedding plus the cached response, if one matched.
+     */
+    private AnswerLookup lookupCachedAnswer(String chatId, String mode, String message) {
+        if (!answerCache.isEnabled() || "WEB".equalsIgnoreCase(mode)) {
+            return null;
+        }
+        // Served by the query embedding cache, so the agent's own retrieval does not pay for it again
+        float[] questionVector = embeddingModel.embed(message).content().vector();
+
+        Optional<SemanticAnswerCache.Entry> candidate = answerCache.findCandidate(chatId, questionVector);
+        if (candidate.isPresent()) {
+            // Compare against what the agent would actually put in the prompt, after aggregation
+            Query query = Query.from(message);
+            List<Content> contents = contentAggregator.aggregate(
+                    Map.of(query, List.of(createRetriever(chatId, mode).retrieve(query))));
+            if (chunkKeys(contents).equals(candidate.get().chunkKeys())) {
+                answerCache.recordHit(candidate.get());
+                return new AnswerLookup(questionVector, candidate.get().response());
+            }
+        }
+        answerCache.recordMiss();
+        return new AnswerLookup(questionVector, null);
+    }
+
+    private ChatResponse answerFromCache(String chatId, String message, ChatResponse cached, long startTime) {
+        persistenceService.recordAiMessage(chatId, cached.getAnswer());
+        chatMemoryStore.appendTurn(chatId, message, cached.getAnswer());
+        log.info("Answered Chat ID: {} from the semantic answer cache", chatId);
+        log.info("Total request time: {} ms", System.currentTimeMillis() - startTime);
+        metrics.stage("total").record(Duration.ofMillis(System.currentTimeMillis() - startTime));
+        return ChatResponse.builder()
+                .answer(cached.getAnswer())
+                .sources(cached.getSources())
+                .promptTokens(0)
+                .build();
+    }
+
+    private static List<String> chunkKeys(List<Content> contents) {
+        if (contents == null) {
+            return List.of();
+        }
+        return contents.stream()
+                .map(content -> HybridContentRetriever.chunkKey(content.textSegment()))
+                .toList();
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data, AtomicBoolean clientGone) {
+        if (clientGone.get()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; keep generating so the answer still lands in the history
+            log.debug("Client disconnected from stream: {}", e.getMessage());
+            clientGone.set(true);
+        }
     }
-}
\ No newline at end of file
+}
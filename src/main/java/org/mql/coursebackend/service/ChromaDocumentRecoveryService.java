@@ -1,31 +1,171 @@
 package org.mql.coursebackend.service;
 
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+
 import org.mql.coursebackend.dto.DocumentInfo;
+import org.mql.coursebackend.entity.IngestionJob;
+import org.mql.coursebackend.rag.ChromaCollectionClient;
+import org.mql.coursebackend.rag.EmbeddedVectorStore;
+import org.mql.coursebackend.repository.IngestionJobRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.util.*;
 
+/**
+ * Rebuilds document metadata from the chunk metadata held in the vector store.
+ * <p>
+ * The collection is read page by page and only one aggregate per document is
+ * kept, so memory grows with the number of documents, not chunks. Recovered
+ * documents have no embedding ids; deleting them falls back to a chatId and
+ * filename filter. Chunks written by an ingestion job that has not completed
+ * are left to the job, which registers the document itself when it finishes.
+ */
 @Service
+@Slf4j
 public class ChromaDocumentRecoveryService {
 
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final ChromaCollectionClient chromaClient;
+    private final DocumentStorageService documentStorageService;
+    private final IngestionJobRepository jobRepository;
+    private final int pageSize;
+    private final boolean recoverOnStartup;
+
+    public ChromaDocumentRecoveryService(EmbeddingStore<TextSegment> embeddingStore,
+            ChromaCollectionClient chromaClient,
+            DocumentStorageService documentStorageService,
+            IngestionJobRepository jobRepository,
+            @Value("${course.rag.recovery.page-size:500}") int pageSize,
+            @Value("${course.rag.recovery.on-startup:true}") boolean recoverOnStartup) {
+        this.embeddingStore = embeddingStore;
+        this.chromaClient = chromaClient;
+        this.documentStorageService = documentStorageService;
+        this.jobRepository = jobRepository;
+        this.pageSize = pageSize;
+        this.recoverOnStartup = recoverOnStartup;
+    }
+
+    private static final class Aggregate {
+        private String documentId;
+        private String filename;
+        private String chatId;
+        private String jobId;
+        private long fileSize;
+        private int totalChunks;
+        private int seenChunks;
+    }
+
+    // Runs off the startup thread; a large collection takes a while to page through
+    @EventListener(ApplicationReadyEvent.class)
+    public void recoverInBackground() {
+        if (!recoverOnStartup || documentStorageService.countAllDocuments() > 0) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            log.info("No documents in storage, attempting recovery from the vector store...");
+            List<DocumentInfo> recovered = recoverDocumentsFromChroma();
+            log.info("Recovered {} documents from the vector store", recovered.size());
+        }, "document-recovery");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers every document found in the vector store that is not already
+     * known, and returns the newly registered ones.
+     */
     public List<DocumentInfo> recoverDocumentsFromChroma() {
+        Map<String, Aggregate> documents = new LinkedHashMap<>();
         try {
-            // Unfortunately, LangChain4j's EmbeddingStore interface doesn't provide
-            // a method to list all embeddings. We need to use reflection or direct API
-            // calls.
-
-            // For now, return empty list and log a message
-            System.out.println("=".repeat(80));
-            System.out.println("DOCUMENT RECOVERY NOTICE:");
-            System.out.println("Automatic recovery from ChromaDB is not available due to API limitations.");
-            System.out.println("Your embeddings are still in ChromaDB and the chat will work fine.");
-            System.out.println("To track existing documents, please re-upload them or wait for manual registration.");
-            System.out.println("=".repeat(80));
-
-            return Collections.emptyList();
-        } catch (Exception e) {
-            System.err.println("Error in recovery service: " + e.getMessage());
+            if (embeddingStore instanceof EmbeddedVectorStore embedded) {
+                embedded.forEach((id, segment) -> {
+                    if (segment != null) {
+                        accumulate(documents, segment.metadata().toMap());
+                    }
+                });
+            } else {
+                chromaClient.forEach(pageSize, false, record -> accumulate(documents, record.metadata()));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Error while reading the vector store for recovery: {}", e.getMessage());
             return Collections.emptyList();
         }
+
+        List<DocumentInfo> registered = new ArrayList<>();
+        for (Aggregate document : documents.values()) {
+            if (isKnown(document) || isOwnedByUnfinishedJob(document)) {
+                continue;
+            }
+            registered.add(documentStorageService.addDocument(
+                    document.documentId != null ? document.documentId : UUID.randomUUID().toString(),
+                    document.filename,
+                    document.fileSize,
+                    document.totalChunks > 0 ? document.totalChunks : document.seenChunks,
+                    document.chatId,
+                    List.of()));
+        }
+        return registered;
+    }
+
+    private static void accumulate(Map<String, Aggregate> documents, Map<String, Object> metadata) {
+        String filename = string(metadata.get("filename"));
+        if (filename == null) {
+            return;
+        }
+        String documentId = string(metadata.get("document_id"));
+        String chatId = string(metadata.get("chatId"));
+        String key = documentId != null ? documentId : (chatId != null ? chatId : "") + '\u0000' + filename;
+
+        Aggregate document = documents.computeIfAbsent(key, k -> new Aggregate());
+        document.documentId = documentId;
+        document.filename = filename;
+        document.chatId = chatId;
+        document.jobId = string(metadata.get("job_id"));
+        document.seenChunks++;
+        document.fileSize = Math.max(document.fileSize, parse(metadata.get("file_size")));
+        document.totalChunks = (int) Math.max(document.totalChunks, parse(metadata.get("total_chunks")));
+    }
+
+    private boolean isKnown(Aggregate document) {
+        if (document.documentId != null) {
+            return documentStorageService.getDocument(document.documentId).isPresent();
+        }
+        return documentStorageService.getAllDocuments(document.chatId).stream()
+                .anyMatch(info -> document.filename.equals(info.getFilename()));
+    }
+
+    /**
+     * A queued or running job may still be writing these chunks, or will remove
+     * them when it resumes. A job that is no longer on record (the database was
+     * lost) does not own them.
+     */
+    private boolean isOwnedByUnfinishedJob(Aggregate document) {
+        if (document.jobId == null) {
+            return false;
+        }
+        return jobRepository.findById(document.jobId)
+                .map(job -> job.getStatus() != IngestionJob.Status.COMPLETED)
+                .orElse(false);
+    }
+
+    private static String string(Object value) {
+        return value == null || value.toString().isEmpty() ? null : value.toString();
+    }
+
+    private static long parse(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return (long) Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
     }
 }
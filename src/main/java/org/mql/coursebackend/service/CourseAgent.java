@@ -2,8 +2,12 @@ package org.mql.coursebackend.service;
 
 import dev.langchain4j.service.MemoryId;
 import dev.langchain4j.service.Result;
+import dev.langchain4j.service.TokenStream;
 import dev.langchain4j.service.UserMessage;
 
 public interface CourseAgent {
     Result<String> chat(@MemoryId String memoryId, @UserMessage String userMessage);
+
+    // Same pipeline as chat(), but tokens are pushed to the caller as the model produces them
+    TokenStream chatStream(@MemoryId String memoryId, @UserMessage String userMessage);
 }
@@ -4,100 +4,145 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
 
 import org.mql.coursebackend.dto.DocumentInfo;
-import org.springframework.context.annotation.Lazy;
+import org.mql.coursebackend.entity.CourseDocument;
+import org.mql.coursebackend.event.DocumentsChangedEvent;
+import org.mql.coursebackend.repository.CourseDocumentRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.io.File;
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Document metadata, stored in the documents table and looked up by chat.
+ * <p>
+ * Metadata used to live in documents-metadata.json; an existing file is imported
+ * once on startup and then renamed so it is not imported again. When the table is
+ * empty, {@link ChromaDocumentRecoveryService} rebuilds it from the vector store.
+ */
 @Service
+@Slf4j
 public class DocumentStorageService {
 
-    private final Map<String, DocumentInfo> documents = new ConcurrentHashMap<>();
-    private final ObjectMapper objectMapper;
-    private final File storageFile;
-    private final ChromaDocumentRecoveryService recoveryService;
+    private final CourseDocumentRepository documentRepository;
+    private final File legacyStorageFile;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public DocumentStorageService(@Lazy ChromaDocumentRecoveryService recoveryService) {
-        this.objectMapper = new ObjectMapper();
-        this.objectMapper.registerModule(new JavaTimeModule());
-        this.storageFile = new File("documents-metadata.json");
-        this.recoveryService = recoveryService;
+    public DocumentStorageService(CourseDocumentRepository documentRepository,
+            ApplicationEventPublisher eventPublisher,
+            @Value("${course.rag.documents.legacy-file:documents-metadata.json}") String legacyStorageFile) {
+        this.documentRepository = documentRepository;
+        this.legacyStorageFile = new File(legacyStorageFile);
+        this.eventPublisher = eventPublisher;
     }
 
     @PostConstruct
-    public void loadDocuments() {
-        if (storageFile.exists()) {
-            try {
-                Map<String, DocumentInfo> loadedDocs = objectMapper.readValue(
-                        storageFile,
-                        new TypeReference<Map<String, DocumentInfo>>() {
-                        });
-                documents.putAll(loadedDocs);
-                System.out.println("Loaded " + documents.size() + " documents from storage");
-            } catch (IOException e) {
-                System.err.println("Failed to load documents: " + e.getMessage());
-            }
-        }
-
-        if (documents.isEmpty()) {
-            System.out.println("No documents in storage, attempting recovery from ChromaDB...");
-            try {
-                List<DocumentInfo> recovered = recoveryService.recoverDocumentsFromChroma();
-                System.out.println("Recovered " + recovered.size() + " documents from ChromaDB");
-            } catch (Exception e) {
-                System.err.println("Failed to recover documents from ChromaDB: " + e.getMessage());
-            }
+    public void migrateLegacyFile() {
+        if (!legacyStorageFile.exists()) {
+            return;
         }
-    }
-
-    private void saveDocuments() {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
         try {
-            objectMapper.writerWithDefaultPrettyPrinter().writeValue(storageFile, documents);
+            Map<String, DocumentInfo> legacy = objectMapper.readValue(legacyStorageFile,
+                    new TypeReference<Map<String, DocumentInfo>>() {
+                    });
+            List<CourseDocument> imported = new ArrayList<>();
+            for (DocumentInfo info : legacy.values()) {
+                if (!documentRepository.existsById(info.getId())) {
+                    imported.add(toEntity(info));
+                }
+            }
+            documentRepository.saveAll(imported);
+            File migrated = new File(legacyStorageFile.getPath() + ".migrated");
+            if (!legacyStorageFile.renameTo(migrated)) {
+                log.warn("Could not rename {} after migration", legacyStorageFile);
+            }
+            log.info("Migrated {} documents from {}", imported.size(), legacyStorageFile);
         } catch (IOException e) {
-            System.err.println("Failed to save documents: " + e.getMessage());
+            log.error("Failed to migrate documents from {}: {}", legacyStorageFile, e.getMessage());
         }
     }
 
     public DocumentInfo addDocument(String filename, long fileSize, int totalChunks, String chatId) {
-        String id = UUID.randomUUID().toString();
-        DocumentInfo documentInfo = DocumentInfo.builder()
+        return addDocument(UUID.randomUUID().toString(), filename, fileSize, totalChunks, chatId, List.of());
+    }
+
+    public DocumentInfo addDocument(String id, String filename, long fileSize, int totalChunks, String chatId,
+            List<String> embeddingIds) {
+        CourseDocument document = documentRepository.save(toEntity(DocumentInfo.builder()
                 .id(id)
                 .filename(filename)
                 .fileSize(fileSize)
                 .uploadedAt(LocalDateTime.now())
                 .totalChunks(totalChunks)
                 .chatId(chatId)
-                .build();
-
-        documents.put(id, documentInfo);
-        saveDocuments();
-        return documentInfo;
+                .embeddingIds(embeddingIds)
+                .build()));
+        eventPublisher.publishEvent(new DocumentsChangedEvent(chatId));
+        return toInfo(document);
     }
 
     public List<DocumentInfo> getAllDocuments(String chatId) {
-        List<DocumentInfo> allDocs = new ArrayList<>(documents.values());
-        if (chatId == null || chatId.isEmpty()) {
-            return allDocs.stream()
-                    .filter(d -> d.getChatId() == null || d.getChatId().isEmpty())
-                    .toList();
-        }
-        return allDocs.stream()
-                .filter(d -> chatId.equals(d.getChatId()))
-                .toList();
+        List<CourseDocument> documents = chatId == null || chatId.isEmpty()
+                ? documentRepository.findByChatIdIsNullOrderByUploadedAtAsc()
+                : documentRepository.findByChatIdOrderByUploadedAtAsc(chatId);
+        return documents.stream().map(DocumentStorageService::toInfo).toList();
+    }
+
+    public long countAllDocuments() {
+        return documentRepository.count();
+    }
+
+    public long countDocuments(String chatId) {
+        return documentRepository.countByChatId(chatId);
     }
 
     public Optional<DocumentInfo> getDocument(String id) {
-        return Optional.ofNullable(documents.get(id));
+        return documentRepository.findById(id).map(DocumentStorageService::toInfo);
+    }
+
+    public List<String> getEmbeddingIds(String id) {
+        return documentRepository.findEmbeddingIds(id);
     }
 
+    @Transactional
     public void deleteDocument(String id) {
-        documents.remove(id);
-        saveDocuments();
+        documentRepository.findById(id).ifPresent(document -> {
+            documentRepository.delete(document);
+            eventPublisher.publishEvent(new DocumentsChangedEvent(document.getChatId()));
+        });
+    }
+
+    private static CourseDocument toEntity(DocumentInfo info) {
+        return CourseDocument.builder()
+                .id(info.getId())
+                .filename(info.getFilename())
+                .fileSize(info.getFileSize())
+                .uploadedAt(info.getUploadedAt())
+                .chatId(info.getChatId() == null || info.getChatId().isEmpty() ? null : info.getChatId())
+                .totalChunks(info.getTotalChunks())
+                .embeddingIds(info.getEmbeddingIds() != null ? new ArrayList<>(info.getEmbeddingIds())
+                        : new ArrayList<>())
+                .build();
+    }
+
+    // Embedding ids are left out; they are loaded separately when a document is deleted
+    private static DocumentInfo toInfo(CourseDocument document) {
+        return DocumentInfo.builder()
+                .id(document.getId())
+                .filename(document.getFilename())
+                .fileSize(document.getFileSize())
+                .uploadedAt(document.getUploadedAt())
+                .chatId(document.getChatId())
+                .totalChunks(document.getTotalChunks())
+                .build();
     }
 }
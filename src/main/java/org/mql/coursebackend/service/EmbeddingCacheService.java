@@ -0,0 +1,166 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.entity.CachedEmbedding;
+import org.mql.coursebackend.repository.CachedEmbeddingRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed cache of chunk embeddings, persisted in H2.
+ * <p>
+ * Entries are keyed by a hash of the embedding model name and the chunk text, so
+ * a document uploaded into several chats is only embedded once; later uploads
+ * only write the chat-scoped copies to the embedding store. Entries older than
+ * {@code course.rag.embedding-cache.ttl} are evicted periodically, as are the
+ * oldest entries beyond {@code course.rag.embedding-cache.max-entries}.
+ */
+@Service
+@Slf4j
+public class EmbeddingCacheService {
+
+    private final EmbeddingModel embeddingModel;
+    private final CachedEmbeddingRepository repository;
+    private final String modelName;
+    private final Duration ttl;
+    private final int maxEntries;
+    private final Counter hits;
+    private final Counter misses;
+
+    public EmbeddingCacheService(EmbeddingModel embeddingModel,
+            CachedEmbeddingRepository repository,
+            MeterRegistry meterRegistry,
+            @Value("${langchain4j.openai.embedding-model.model-name}") String modelName,
+            @Value("${course.rag.embedding-cache.ttl:30d}") Duration ttl,
+            @Value("${course.rag.embedding-cache.max-entries:200000}") int maxEntries) {
+        this.embeddingModel = embeddingModel;
+        this.repository = repository;
+        this.modelName = modelName;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.hits = Counter.builder("course.embedding.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("course.embedding.cache").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Same contract as {@link EmbeddingModel#embedAll}: one embedding per segment, in order.
+     */
+    public List<Embedding> embedAll(List<TextSegment> segments) {
+        List<String> keys = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            keys.add(key(segment.text()));
+        }
+
+        Map<String, Embedding> known = new HashMap<>();
+        for (CachedEmbedding cached : repository.findAllById(keys)) {
+            known.put(cached.getId(), Embedding.from(toFloats(cached.getVector())));
+        }
+
+        // Identical chunks inside the batch are only embedded once
+        Map<String, TextSegment> missing = new LinkedHashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            if (!known.containsKey(keys.get(i))) {
+                missing.putIfAbsent(keys.get(i), segments.get(i));
+            }
+        }
+        hits.increment(segments.size() - missing.size());
+        misses.increment(missing.size());
+
+        if (!missing.isEmpty()) {
+            List<String> missingKeys = new ArrayList<>(missing.keySet());
+            List<Embedding> embedded = embeddingModel.embedAll(new ArrayList<>(missing.values())).content();
+            List<CachedEmbedding> entries = new ArrayList<>(embedded.size());
+            for (int i = 0; i < embedded.size(); i++) {
+                Embedding embedding = embedded.get(i);
+                known.put(missingKeys.get(i), embedding);
+                entries.add(CachedEmbedding.builder()
+                        .id(missingKeys.get(i))
+                        .modelName(modelName)
+                        .dimension(embedding.dimension())
+                        .vector(toBytes(embedding.vector()))
+                        .build());
+            }
+            try {
+                repository.saveAll(entries);
+            } catch (DataAccessException e) {
+                // Best effort: a concurrent ingestion may have cached the same chunk first
+                log.debug("Could not cache {} embeddings: {}", entries.size(), e.getMessage());
+            }
+        }
+
+        List<Embedding> result = new ArrayList<>(segments.size());
+        for (String key : keys) {
+            result.add(known.get(key));
+        }
+        return result;
+    }
+
+    /**
+     * Drops entries past their TTL, then the oldest entries over the size cap.
+     */
+    @Scheduled(initialDelayString = "${course.rag.embedding-cache.eviction-initial-delay:PT5M}",
+            fixedDelayString = "${course.rag.embedding-cache.eviction-interval:PT1H}")
+    public void evict() {
+        try {
+            int expired = repository.deleteCreatedBefore(LocalDateTime.now().minus(ttl));
+            int overflow = 0;
+            List<LocalDateTime> oldestKept = repository.findCreatedAtNewestFirst(
+                    PageRequest.of(Math.max(maxEntries - 1, 0), 1));
+            if (!oldestKept.isEmpty()) {
+                // Entries created in the same instant as the oldest kept one stay too
+                overflow = repository.deleteCreatedBefore(oldestKept.get(0));
+            }
+            if (expired + overflow > 0) {
+                log.info("Evicted {} expired and {} surplus cached embeddings", expired, overflow);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Embedding cache eviction failed: {}", e.getMessage());
+        }
+    }
+
+    private String key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static byte[] toBytes(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    private static float[] toFloats(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).asFloatBuffer().get(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,158 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.dto.DocumentInfo;
+import org.mql.coursebackend.rag.Bm25Index;
+import org.mql.coursebackend.rag.ChromaCollectionClient;
+import org.mql.coursebackend.rag.EmbeddedVectorStore;
+import org.mql.coursebackend.repository.ChatSessionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Removes vectors and lexical index entries when documents or chats are deleted,
+ * and periodically collects vectors left behind by chats that no longer exist.
+ */
+@Service
+@Slf4j
+public class EmbeddingCleanupService {
+
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Bm25Index lexicalIndex;
+    private final DocumentStorageService documentStorageService;
+    private final ChatSessionRepository sessionRepository;
+    private final ChromaCollectionClient chromaClient;
+    private final int batchSize;
+
+    // Chats found orphaned by the previous run; only deleted if still orphaned on the next
+    private Set<String> orphanSuspects = Set.of();
+
+    public EmbeddingCleanupService(EmbeddingStore<TextSegment> embeddingStore,
+            Bm25Index lexicalIndex,
+            DocumentStorageService documentStorageService,
+            ChatSessionRepository sessionRepository,
+            ChromaCollectionClient chromaClient,
+            @Value("${course.rag.cleanup.batch-size:500}") int batchSize) {
+        this.embeddingStore = embeddingStore;
+        this.lexicalIndex = lexicalIndex;
+        this.documentStorageService = documentStorageService;
+        this.sessionRepository = sessionRepository;
+        this.chromaClient = chromaClient;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Deletes a document's vectors, its lexical entries and its metadata.
+     *
+     * @return false if there is no such document
+     */
+    public boolean deleteDocument(String documentId) {
+        DocumentInfo document = documentStorageService.getDocument(documentId).orElse(null);
+        if (document == null) {
+            return false;
+        }
+        removeEmbeddings(document);
+        documentStorageService.deleteDocument(documentId);
+        return true;
+    }
+
+    /**
+     * Deletes everything indexed for a chat, including its document metadata.
+     */
+    public void deleteChat(String chatId) {
+        if (chatId == null || chatId.isEmpty()) {
+            return;
+        }
+        embeddingStore.removeAll(metadataKey("chatId").isEqualTo(chatId));
+        lexicalIndex.removeChat(chatId);
+        for (DocumentInfo document : documentStorageService.getAllDocuments(chatId)) {
+            documentStorageService.deleteDocument(document.getId());
+        }
+        log.info("Removed embeddings and documents of chat {}", chatId);
+    }
+
+    private void removeEmbeddings(DocumentInfo document) {
+        List<String> ids = documentStorageService.getEmbeddingIds(document.getId());
+        String chatId = document.getChatId();
+        if (!ids.isEmpty()) {
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                embeddingStore.removeAll(ids.subList(from, Math.min(ids.size(), from + batchSize)));
+            }
+            lexicalIndex.remove(chatId, metadata -> document.getId().equals(metadata.getString("document_id")));
+        } else if (chatId != null && !chatId.isEmpty()) {
+            // Documents ingested before ids were recorded: match on chat and filename
+            embeddingStore.removeAll(metadataKey("chatId").isEqualTo(chatId)
+                    .and(metadataKey("filename").isEqualTo(document.getFilename())));
+            lexicalIndex.remove(chatId, metadata -> document.getFilename().equals(metadata.getString("filename")));
+        } else {
+            log.warn("No embedding ids recorded for global document {}; its vectors were left in place",
+                    document.getFilename());
+            return;
+        }
+        log.info("Removed embeddings of document {} ({} ids)", document.getFilename(), ids.size());
+    }
+
+    /**
+     * Removes vectors whose chatId has neither a session nor registered documents.
+     * A chat must look orphaned on two consecutive runs, so uploads to a chat whose
+     * session is not yet saved are left alone.
+     */
+    @Scheduled(initialDelayString = "${course.rag.cleanup.orphan-gc-initial-delay:PT10M}",
+            fixedDelayString = "${course.rag.cleanup.orphan-gc-interval:PT6H}")
+    public void collectOrphans() {
+        Set<String> orphans = new HashSet<>();
+        try {
+            for (String chatId : storedChatIds()) {
+                if (!sessionRepository.existsById(chatId)
+                        && documentStorageService.countDocuments(chatId) == 0) {
+                    orphans.add(chatId);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Orphaned vector scan failed: {}", e.getMessage());
+            return;
+        }
+
+        Set<String> confirmed = new HashSet<>(orphans);
+        confirmed.retainAll(orphanSuspects);
+        for (String chatId : confirmed) {
+            embeddingStore.removeAll(metadataKey("chatId").isEqualTo(chatId));
+            lexicalIndex.removeChat(chatId);
+        }
+        orphanSuspects = orphans;
+        if (!orphans.isEmpty()) {
+            log.info("Orphaned vector scan: {} chats suspected, {} collected", orphans.size(), confirmed.size());
+        }
+    }
+
+    private Set<String> storedChatIds() throws IOException {
+        Set<String> chatIds = new HashSet<>();
+        if (embeddingStore instanceof EmbeddedVectorStore embedded) {
+            embedded.forEach((id, segment) -> {
+                if (segment != null && segment.metadata().getString("chatId") != null) {
+                    chatIds.add(segment.metadata().getString("chatId"));
+                }
+            });
+        } else {
+            chromaClient.forEach(batchSize, false, record -> {
+                Object chatId = record.metadata().get("chatId");
+                if (chatId != null) {
+                    chatIds.add(chatId.toString());
+                }
+            });
+        }
+        chatIds.remove("");
+        return chatIds;
+    }
+}
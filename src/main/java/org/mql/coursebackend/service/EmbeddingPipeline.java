@@ -0,0 +1,213 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.rag.Bm25Index;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Embeds and stores chunks in sized batches.
+ * <p>
+ * Up to {@code embedding-parallelism} batches are embedded concurrently while the
+ * calling thread writes already-embedded batches to the store, so store writes
+ * overlap with the embedding of the following batches.
+ */
+@Component
+@Slf4j
+public class EmbeddingPipeline {
+
+    private final EmbeddingCacheService embeddingCacheService;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Bm25Index lexicalIndex;
+    private final ExecutorService embeddingExecutor;
+    private final int embeddingBatchSize;
+    private final int embeddingParallelism;
+    private final int storeBatchSize;
+
+    private final Counter embeddedChunks;
+    private final Counter storedChunks;
+    private final Timer embedBatchTimer;
+    private final Timer storeBatchTimer;
+    private final DistributionSummary embedThroughput;
+    private final DistributionSummary storeThroughput;
+
+    private record Batch(List<TextSegment> segments, Future<List<Embedding>> embeddings) {
+    }
+
+    public EmbeddingPipeline(EmbeddingCacheService embeddingCacheService,
+            EmbeddingStore<TextSegment> embeddingStore,
+            Bm25Index lexicalIndex,
+            @Qualifier("embeddingExecutor") ExecutorService embeddingExecutor,
+            MeterRegistry meterRegistry,
+            @Value("${course.rag.ingestion.embedding-batch-size:32}") int embeddingBatchSize,
+            @Value("${course.rag.ingestion.embedding-parallelism:4}") int embeddingParallelism,
+            @Value("${course.rag.ingestion.store-batch-size:128}") int storeBatchSize) {
+        this.embeddingCacheService = embeddingCacheService;
+        this.embeddingStore = embeddingStore;
+        this.lexicalIndex = lexicalIndex;
+        this.embeddingExecutor = embeddingExecutor;
+        this.embeddingBatchSize = embeddingBatchSize;
+        this.embeddingParallelism = embeddingParallelism;
+        this.storeBatchSize = storeBatchSize;
+
+        this.embeddedChunks = Counter.builder("course.ingestion.chunks").tag("stage", "embedded")
+                .register(meterRegistry);
+        this.storedChunks = Counter.builder("course.ingestion.chunks").tag("stage", "stored")
+                .register(meterRegistry);
+        this.embedBatchTimer = Timer.builder("course.ingestion.batch").tag("stage", "embed")
+                .register(meterRegistry);
+        this.storeBatchTimer = Timer.builder("course.ingestion.batch").tag("stage", "store")
+                .register(meterRegistry);
+        this.embedThroughput = DistributionSummary.builder("course.ingestion.throughput").tag("stage", "embed")
+                .baseUnit("chunks/s").register(meterRegistry);
+        this.storeThroughput = DistributionSummary.builder("course.ingestion.throughput").tag("stage", "store")
+                .baseUnit("chunks/s").register(meterRegistry);
+    }
+
+    /**
+     * Runs all segments through the pipeline. Embedded batches are accumulated and
+     * written {@code store-batch-size} chunks at a time. If any batch fails, the
+     * chunks already written are removed from the vector store and the lexical
+     * index before the exception is thrown, so a failed ingestion leaves nothing
+     * behind that no document record points to.
+     *
+     * @param totalChunks expected number of segments, only used for progress reporting
+     * @return the ids assigned by the embedding store, in segment order
+     */
+    public List<String> run(Iterator<TextSegment> segments, int totalChunks,
+            IngestionService.ProgressListener progress) throws IOException {
+        long start = System.nanoTime();
+        long storeNanos = 0;
+        long lastEmbeddedAt = start;
+        List<String> ids = new ArrayList<>();
+        TextSegment firstStored = null;
+        List<Embedding> pendingEmbeddings = new ArrayList<>(storeBatchSize);
+        List<TextSegment> pendingSegments = new ArrayList<>(storeBatchSize);
+        Deque<Batch> inFlight = new ArrayDeque<>();
+
+        progress.onProgress(0, totalChunks);
+        try {
+            while (segments.hasNext() || !inFlight.isEmpty()) {
+                while (inFlight.size() < embeddingParallelism && segments.hasNext()) {
+                    List<TextSegment> batch = nextBatch(segments);
+                    inFlight.add(new Batch(batch, embeddingExecutor.submit(() -> embed(batch))));
+                }
+
+                Batch head = inFlight.poll();
+                pendingEmbeddings.addAll(head.embeddings().get());
+                pendingSegments.addAll(head.segments());
+                lastEmbeddedAt = System.nanoTime();
+
+                boolean last = inFlight.isEmpty() && !segments.hasNext();
+                while (pendingSegments.size() >= storeBatchSize || (last && !pendingSegments.isEmpty())) {
+                    int size = Math.min(storeBatchSize, pendingSegments.size());
+                    List<Embedding> embeddingSlice = pendingEmbeddings.subList(0, size);
+                    List<TextSegment> segmentSlice = pendingSegments.subList(0, size);
+                    List<Embedding> embeddingBatch = new ArrayList<>(embeddingSlice);
+                    List<TextSegment> segmentBatch = new ArrayList<>(segmentSlice);
+                    embeddingSlice.clear();
+                    segmentSlice.clear();
+
+                    long storeStart = System.nanoTime();
+                    ids.addAll(storeBatchTimer.record(() -> embeddingStore.addAll(embeddingBatch, segmentBatch)));
+                    if (firstStored == null) {
+                        firstStored = segmentBatch.get(0);
+                    }
+                    storedChunks.increment(size);
+                    // Keep the lexical index in step with what is searchable in the vector store
+                    lexicalIndex.add(segmentBatch);
+                    storeNanos += System.nanoTime() - storeStart;
+
+                    progress.onProgress(ids.size(), Math.max(ids.size(), totalChunks));
+                }
+            }
+        } catch (ExecutionException e) {
+            inFlight.forEach(batch -> batch.embeddings().cancel(true));
+            discard(ids, firstStored);
+            throw new IOException("Embedding failed", e.getCause());
+        } catch (InterruptedException e) {
+            inFlight.forEach(batch -> batch.embeddings().cancel(true));
+            discard(ids, firstStored);
+            Thread.currentThread().interrupt();
+            throw new IOException("Ingestion interrupted", e);
+        } catch (RuntimeException e) {
+            inFlight.forEach(batch -> batch.embeddings().cancel(true));
+            discard(ids, firstStored);
+            throw e;
+        }
+
+        if (!ids.isEmpty()) {
+            // Embedding rate is wall-clock (batches run in parallel); store rate is time spent writing
+            double embedRate = ids.size() / Math.max((lastEmbeddedAt - start) / 1e9, 1e-3);
+            double storeRate = ids.size() / Math.max(storeNanos / 1e9, 1e-3);
+            embedThroughput.record(embedRate);
+            storeThroughput.record(storeRate);
+            log.info("Ingested {} chunks: {} chunks/s embedded, {} chunks/s stored",
+                    ids.size(), Math.round(embedRate), Math.round(storeRate));
+        }
+        return ids;
+    }
+
+    private List<TextSegment> nextBatch(Iterator<TextSegment> segments) {
+        List<TextSegment> batch = new ArrayList<>(embeddingBatchSize);
+        while (batch.size() < embeddingBatchSize && segments.hasNext()) {
+            batch.add(segments.next());
+        }
+        return batch;
+    }
+
+    private List<Embedding> embed(List<TextSegment> batch) {
+        List<Embedding> embeddings = embedBatchTimer.record(() -> embeddingCacheService.embedAll(batch));
+        embeddedChunks.increment(batch.size());
+        return embeddings;
+    }
+
+    /**
+     * Removes chunks written by {@link #run} from the vector store and the
+     * lexical index, for a run that failed or whose document was not registered.
+     */
+    public void discard(List<String> ids, String chatId, String documentId) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        if (documentId != null) {
+            lexicalIndex.remove(chatId, metadata -> documentId.equals(metadata.getString("document_id")));
+        }
+        try {
+            for (int from = 0; from < ids.size(); from += storeBatchSize) {
+                embeddingStore.removeAll(ids.subList(from, Math.min(ids.size(), from + storeBatchSize)));
+            }
+            log.info("Removed {} chunks of a failed ingestion", ids.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not remove {} chunks of a failed ingestion: {}", ids.size(), e.getMessage());
+        }
+    }
+
+    // All segments of one run belong to the same document, so any stored one identifies it
+    private void discard(List<String> ids, TextSegment firstStored) {
+        if (firstStored != null) {
+            Metadata metadata = firstStored.metadata();
+            discard(ids, metadata.getString("chatId"), metadata.getString("document_id"));
+        }
+    }
+}
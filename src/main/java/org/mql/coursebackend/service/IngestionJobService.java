@@ -0,0 +1,184 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.entity.IngestionJob;
+import org.mql.coursebackend.rag.Bm25Index;
+import org.mql.coursebackend.repository.IngestionJobRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
+/**
+ * Runs document ingestion as persisted background jobs on a bounded worker pool.
+ * <p>
+ * Uploads are copied to disk and recorded in ingestion_jobs before being queued,
+ * so jobs still queued or running when the application stops are picked up again
+ * on the next start.
+ */
+@Service
+@Slf4j
+public class IngestionJobService {
+
+    private final IngestionService ingestionService;
+    private final IngestionJobRepository jobRepository;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final Bm25Index lexicalIndex;
+    private final ThreadPoolExecutor ingestionExecutor;
+    private final File uploadDirectory;
+
+    public IngestionJobService(IngestionService ingestionService,
+            IngestionJobRepository jobRepository,
+            EmbeddingStore<TextSegment> embeddingStore,
+            Bm25Index lexicalIndex,
+            @Qualifier("ingestionExecutor") ThreadPoolExecutor ingestionExecutor,
+            @Value("${course.rag.ingestion.upload-directory:ingestion-uploads}") String uploadDirectory) {
+        this.ingestionService = ingestionService;
+        this.jobRepository = jobRepository;
+        this.embeddingStore = embeddingStore;
+        this.lexicalIndex = lexicalIndex;
+        this.ingestionExecutor = ingestionExecutor;
+        this.uploadDirectory = new File(uploadDirectory);
+    }
+
+    /**
+     * Queues a document for ingestion.
+     *
+     * @throws IllegalStateException      if the chat already holds the maximum number of documents
+     * @throws RejectedExecutionException if the ingestion queue is full
+     */
+    public IngestionJob submit(MultipartFile file, String chatId) throws IOException {
+        ingestionService.checkDocumentLimit(chatId);
+        if (ingestionExecutor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("Ingestion queue is full, please retry later.");
+        }
+
+        String id = UUID.randomUUID().toString();
+        if (!uploadDirectory.isDirectory() && !uploadDirectory.mkdirs()) {
+            throw new IOException("Cannot create upload directory " + uploadDirectory);
+        }
+        File storedFile = new File(uploadDirectory, id);
+        file.transferTo(storedFile.toPath().toAbsolutePath());
+
+        IngestionJob job;
+        try {
+            // A queued job holds one of the chat's document slots from here on
+            job = ingestionService.withinDocumentLimit(chatId, () -> jobRepository.save(IngestionJob.builder()
+                    .id(id)
+                    .chatId(chatId)
+                    .filename(file.getOriginalFilename())
+                    .fileSize(file.getSize())
+                    .storedPath(storedFile.getAbsolutePath())
+                    .status(IngestionJob.Status.QUEUED)
+                    .build()));
+        } catch (IllegalStateException e) {
+            deleteQuietly(storedFile);
+            throw e;
+        }
+
+        try {
+            ingestionExecutor.execute(() -> run(id));
+        } catch (RejectedExecutionException e) {
+            jobRepository.deleteById(id);
+            deleteQuietly(storedFile);
+            throw new RejectedExecutionException("Ingestion queue is full, please retry later.", e);
+        }
+        return job;
+    }
+
+    public Optional<IngestionJob> getJob(String id) {
+        return jobRepository.findById(id);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedJobs() {
+        List<IngestionJob> unfinished = jobRepository.findByStatusInOrderByCreatedAtAsc(
+                EnumSet.of(IngestionJob.Status.QUEUED, IngestionJob.Status.RUNNING));
+        for (IngestionJob job : unfinished) {
+            if (job.getStatus() == IngestionJob.Status.RUNNING) {
+                removePartialChunks(job);
+            }
+            if (job.getStoredPath() == null || !new File(job.getStoredPath()).exists()) {
+                fail(job, "Uploaded file is no longer available");
+                continue;
+            }
+            job.setStatus(IngestionJob.Status.QUEUED);
+            job.setProcessedChunks(0);
+            jobRepository.save(job);
+            try {
+                ingestionExecutor.execute(() -> run(job.getId()));
+                log.info("Resumed ingestion job {} for {}", job.getId(), job.getFilename());
+            } catch (RejectedExecutionException e) {
+                // Stays QUEUED and is retried on the next start
+                log.warn("Ingestion queue full, job {} will resume on next start", job.getId());
+            }
+        }
+    }
+
+    private void run(String jobId) {
+        IngestionJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        job.setStatus(IngestionJob.Status.RUNNING);
+        jobRepository.save(job);
+
+        File storedFile = new File(job.getStoredPath());
+        try (InputStream inputStream = Files.newInputStream(storedFile.toPath())) {
+            ingestionService.ingest(inputStream, job.getFilename(), job.getFileSize(), job.getChatId(), job.getId(),
+                    (processed, total) -> {
+                        job.setProcessedChunks(processed);
+                        job.setTotalChunks(total);
+                        jobRepository.save(job);
+                    });
+            job.setStatus(IngestionJob.Status.COMPLETED);
+            jobRepository.save(job);
+            log.info("Ingestion job {} completed: {} chunks", jobId, job.getTotalChunks());
+            deleteQuietly(storedFile);
+        } catch (Exception e) {
+            log.error("Ingestion job {} failed", jobId, e);
+            removePartialChunks(job);
+            fail(job, e.getMessage());
+            deleteQuietly(storedFile);
+        }
+    }
+
+    private void fail(IngestionJob job, String error) {
+        job.setStatus(IngestionJob.Status.FAILED);
+        job.setError(error != null && error.length() > 2000 ? error.substring(0, 2000) : error);
+        jobRepository.save(job);
+    }
+
+    private void removePartialChunks(IngestionJob job) {
+        lexicalIndex.remove(job.getChatId(), metadata -> job.getId().equals(metadata.getString("job_id")));
+        try {
+            embeddingStore.removeAll(metadataKey("job_id").isEqualTo(job.getId()));
+        } catch (RuntimeException e) {
+            log.warn("Could not remove partial chunks of ingestion job {}: {}", job.getId(), e.getMessage());
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
@@ -1,81 +1,161 @@
 package org.mql.coursebackend.service;
 
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
-import lombok.RequiredArgsConstructor;
+import org.mql.coursebackend.entity.IngestionJob;
+import org.mql.coursebackend.repository.IngestionJobRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import dev.langchain4j.data.document.DocumentSplitter;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 @Service
-@RequiredArgsConstructor
 public class IngestionService {
 
-    private final EmbeddingStore<TextSegment> embeddingStore;
-    private final EmbeddingModel embeddingModel;
+    private final EmbeddingPipeline embeddingPipeline;
     private final DocumentStorageService documentStorageService;
+    private final IngestionJobRepository jobRepository;
+    private final ExecutorService documentParseExecutor;
+    // Files at least this large are parsed and chunked incrementally
+    private final long streamingThreshold;
+    private final int streamingBlockChars;
 
     private static final int MAX_DOCUMENTS_PER_CHAT = 5;
+    private static final EnumSet<IngestionJob.Status> PENDING =
+            EnumSet.of(IngestionJob.Status.QUEUED, IngestionJob.Status.RUNNING);
 
-    @SuppressWarnings("deprecation")
-    public void ingest(MultipartFile file, String chatId) throws IOException {
+    // Serialize count-then-insert per chat; the application is the only writer of its database
+    private final ReentrantLock[] limitLocks = new ReentrantLock[32];
+
+    public IngestionService(EmbeddingPipeline embeddingPipeline,
+            DocumentStorageService documentStorageService,
+            IngestionJobRepository jobRepository,
+            @Qualifier("documentParseExecutor") ExecutorService documentParseExecutor,
+            @Value("${course.rag.ingestion.streaming-threshold:5MB}") DataSize streamingThreshold,
+            @Value("${course.rag.ingestion.streaming-block-chars:8000}") int streamingBlockChars) {
+        this.embeddingPipeline = embeddingPipeline;
+        this.documentStorageService = documentStorageService;
+        this.jobRepository = jobRepository;
+        this.documentParseExecutor = documentParseExecutor;
+        this.streamingThreshold = streamingThreshold.toBytes();
+        this.streamingBlockChars = streamingBlockChars;
+        for (int i = 0; i < limitLocks.length; i++) {
+            limitLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Receives chunk progress while a document is being embedded and stored.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        ProgressListener NONE = (processedChunks, totalChunks) -> {
+        };
+
+        void onProgress(int processedChunks, int totalChunks);
+    }
+
+    /**
+     * Rejects an upload to a chat whose documents and queued or running ingestion
+     * jobs already reach the limit.
+     */
+    public void checkDocumentLimit(String chatId) {
         if (chatId != null && !chatId.isEmpty()) {
-            int currentCount = documentStorageService.getAllDocuments(chatId).size();
+            long currentCount = documentStorageService.countDocuments(chatId)
+                    + jobRepository.countByChatIdAndStatusIn(chatId, PENDING);
             if (currentCount >= MAX_DOCUMENTS_PER_CHAT) {
-                throw new IllegalStateException(
-                        "Maximum number of documents (" + MAX_DOCUMENTS_PER_CHAT + ") reached for this chat.");
+                throw limitReached();
             }
         }
+    }
+
+    /**
+     * Checks the document limit and runs {@code action} without letting another
+     * upload to the same chat check in between, so two uploads cannot both take
+     * the last slot.
+     */
+    public <T> T withinDocumentLimit(String chatId, Supplier<T> action) {
+        if (chatId == null || chatId.isEmpty()) {
+            return action.get();
+        }
+        ReentrantLock lock = limitLock(chatId);
+        lock.lock();
+        try {
+            checkDocumentLimit(chatId);
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ingest(MultipartFile file, String chatId) throws IOException {
+        // Fails fast before parsing; the limit is checked again when the document is registered
+        checkDocumentLimit(chatId);
 
         try (InputStream inputStream = file.getInputStream()) {
+            ingest(inputStream, file.getOriginalFilename(), file.getSize(), chatId, null, ProgressListener.NONE);
+        }
+    }
+
+    /**
+     * Parses, splits, embeds and stores one document. When {@code jobId} is given,
+     * every chunk is tagged with it so an interrupted job can be cleaned up.
+     */
+    @SuppressWarnings("deprecation")
+    public void ingest(InputStream inputStream, String filename, long fileSize, String chatId,
+            String jobId, ProgressListener progress) throws IOException {
+        String documentId = UUID.randomUUID().toString();
+        if (fileSize >= streamingThreshold) {
+            ingestStreaming(inputStream, filename, fileSize, chatId, jobId, documentId, progress);
+            return;
+        }
+        try {
             Document document = new ApacheTikaDocumentParser().parse(inputStream);
 
-            document.metadata().add("filename", file.getOriginalFilename());
-            document.metadata().add("source", file.getOriginalFilename());
-            document.metadata().add("file_size", String.valueOf(file.getSize()));
+            document.metadata().add("filename", filename);
+            document.metadata().add("source", filename);
+            document.metadata().add("file_size", String.valueOf(fileSize));
+            document.metadata().add("document_id", documentId);
 
             if (chatId != null && !chatId.isEmpty()) {
                 document.metadata().add("chatId", chatId);
             }
+            if (jobId != null) {
+                document.metadata().add("job_id", jobId);
+            }
 
             DocumentSplitter splitter = DocumentSplitters.recursive(
                     1000,
                     100);
 
             List<TextSegment> segments = splitter.split(document);
-            List<Document> documents = new ArrayList<>();
-            for (int i = 0; i < segments.size(); i++) {
-                TextSegment segment = segments.get(i);
+            List<TextSegment> chunks = numberChunks(segments);
 
-                Document segmentDocument = Document.from(
-                        segment.text(),
-                        segment.metadata().copy());
-                segmentDocument.metadata().add("chunk_index", String.valueOf(i));
-                segmentDocument.metadata().add("total_chunks", String.valueOf(segments.size()));
+            List<String> embeddingIds = embeddingPipeline.run(chunks.iterator(), chunks.size(), progress);
 
-                documents.add(segmentDocument);
-            }
-            EmbeddingStoreIngestor ingestor = EmbeddingStoreIngestor.builder()
-                    .embeddingStore(embeddingStore)
-                    .embeddingModel(embeddingModel)
-                    .build();
-            ingestor.ingest(documents);
-
-            documentStorageService.addDocument(
-                    file.getOriginalFilename(),
-                    file.getSize(),
+            registerDocument(
+                    documentId,
+                    filename,
+                    fileSize,
                     segments.size(),
-                    chatId);
+                    chatId,
+                    embeddingIds);
 
         } catch (IllegalStateException e) {
             throw e;
@@ -85,4 +165,90 @@ public class IngestionService {
             throw new IOException("Ingestion failed", e);
         }
     }
+
+    /**
+     * Copies each segment with {@code chunk_index} and {@code total_chunks} added
+     * to its metadata.
+     */
+    @SuppressWarnings("deprecation")
+    public static List<TextSegment> numberChunks(List<TextSegment> segments) {
+        List<TextSegment> chunks = new ArrayList<>(segments.size());
+        for (int i = 0; i < segments.size(); i++) {
+            TextSegment segment = segments.get(i);
+
+            Metadata chunkMetadata = segment.metadata().copy();
+            chunkMetadata.add("chunk_index", String.valueOf(i));
+            chunkMetadata.add("total_chunks", String.valueOf(segments.size()));
+
+            chunks.add(TextSegment.from(segment.text(), chunkMetadata));
+        }
+        return chunks;
+    }
+
+    /**
+     * Bounded-memory variant of {@link #ingest}: Tika output is split and embedded
+     * while the file is still being parsed, so only a few blocks and batches are
+     * held at a time.
+     */
+    private void ingestStreaming(InputStream inputStream, String filename, long fileSize, String chatId,
+            String jobId, String documentId, ProgressListener progress) throws IOException {
+        Metadata metadata = new Metadata();
+        metadata.put("filename", filename);
+        metadata.put("source", filename);
+        metadata.put("file_size", String.valueOf(fileSize));
+        metadata.put("document_id", documentId);
+        if (chatId != null && !chatId.isEmpty()) {
+            metadata.put("chatId", chatId);
+        }
+        if (jobId != null) {
+            metadata.put("job_id", jobId);
+        }
+
+        try (StreamingDocumentReader reader = new StreamingDocumentReader(inputStream, metadata,
+                DocumentSplitters.recursive(1000, 100), documentParseExecutor, streamingBlockChars)) {
+            // The chunk count is unknown up front; progress reports chunks stored so far
+            List<String> embeddingIds = embeddingPipeline.run(reader, 0, progress);
+            registerDocument(documentId, filename, fileSize, reader.chunkCount(), chatId, embeddingIds);
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (UncheckedIOException e) {
+            throw new IOException("Ingestion failed", e.getCause());
+        } catch (RuntimeException e) {
+            // Tika or embedding failures surface like they do on the non-streaming path
+            throw new IOException("Ingestion failed", e);
+        }
+    }
+
+    /**
+     * Records the ingested document, re-checking the limit under the chat's lock:
+     * other uploads may have been registered while this one was embedded. A
+     * running job counts as pending itself, so only documents are counted here.
+     */
+    private void registerDocument(String documentId, String filename, long fileSize, int totalChunks,
+            String chatId, List<String> embeddingIds) {
+        if (chatId == null || chatId.isEmpty()) {
+            documentStorageService.addDocument(documentId, filename, fileSize, totalChunks, chatId, embeddingIds);
+            return;
+        }
+        ReentrantLock lock = limitLock(chatId);
+        lock.lock();
+        try {
+            if (documentStorageService.countDocuments(chatId) >= MAX_DOCUMENTS_PER_CHAT) {
+                embeddingPipeline.discard(embeddingIds, chatId, documentId);
+                throw limitReached();
+            }
+            documentStorageService.addDocument(documentId, filename, fileSize, totalChunks, chatId, embeddingIds);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock limitLock(String chatId) {
+        return limitLocks[Math.floorMod(chatId.hashCode(), limitLocks.length)];
+    }
+
+    private static IllegalStateException limitReached() {
+        return new IllegalStateException(
+                "Maximum number of documents (" + MAX_DOCUMENTS_PER_CHAT + ") reached for this chat.");
+    }
 }
@@ -0,0 +1,160 @@
+package org.mql.coursebackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import org.mql.coursebackend.dto.ChatResponse;
+import org.mql.coursebackend.event.DocumentsChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional cache of generated answers, matched by question similarity.
+ * <p>
+ * A cached answer is only a candidate when the new question's embedding is within
+ * {@code course.rag.answer-cache.similarity-threshold} (cosine) of a previous
+ * question in the same chat; {@link ChatService} then confirms that retrieval
+ * still returns the same chunks before reusing it. All entries of a chat are
+ * dropped when its documents change.
+ */
+@Component
+@Slf4j
+public class SemanticAnswerCache {
+
+    public record Entry(float[] questionVector, List<String> chunkKeys, ChatResponse response,
+            long generationMillis) {
+    }
+
+    private static final class ChatEntries {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Deque<Entry> entries = new ArrayDeque<>();
+    }
+
+    private final boolean enabled;
+    private final double similarityThreshold;
+    private final int maxEntriesPerChat;
+    private final Cache<String, ChatEntries> chats;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer savedLatency;
+
+    public SemanticAnswerCache(MeterRegistry meterRegistry,
+            @Value("${course.rag.answer-cache.enabled:false}") boolean enabled,
+            @Value("${course.rag.answer-cache.similarity-threshold:0.95}") double similarityThreshold,
+            @Value("${course.rag.answer-cache.max-entries-per-chat:100}") int maxEntriesPerChat,
+            @Value("${course.rag.answer-cache.max-chats:1000}") long maxChats,
+            @Value("${course.rag.answer-cache.expire-after-access:6h}") Duration expireAfterAccess) {
+        this.enabled = enabled;
+        this.similarityThreshold = similarityThreshold;
+        this.maxEntriesPerChat = maxEntriesPerChat;
+        this.chats = Caffeine.newBuilder()
+                .maximumSize(maxChats)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+
+        this.hits = Counter.builder("course.answer.cache").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("course.answer.cache").tag("result", "miss").register(meterRegistry);
+        // Generation time of the original answer, i.e. the latency each hit saved
+        this.savedLatency = Timer.builder("course.answer.cache.saved").register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Closest cached answer above the similarity threshold, if any.
+     */
+    public Optional<Entry> findCandidate(String chatId, float[] questionVector) {
+        ChatEntries chatEntries = chats.getIfPresent(chatId);
+        if (chatEntries == null) {
+            return Optional.empty();
+        }
+        float[] query = normalized(questionVector);
+        Entry best = null;
+        double bestScore = similarityThreshold;
+        chatEntries.lock.lock();
+        try {
+            for (Entry entry : chatEntries.entries) {
+                double score = dot(query, entry.questionVector());
+                if (score >= bestScore) {
+                    best = entry;
+                    bestScore = score;
+                }
+            }
+        } finally {
+            chatEntries.lock.unlock();
+        }
+        return Optional.ofNullable(best);
+    }
+
+    public void recordHit(Entry entry) {
+        hits.increment();
+        savedLatency.record(Duration.ofMillis(entry.generationMillis()));
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void put(String chatId, float[] questionVector, List<String> chunkKeys, ChatResponse response,
+            long generationMillis) {
+        Entry entry = new Entry(normalized(questionVector), List.copyOf(chunkKeys), response, generationMillis);
+        ChatEntries chatEntries = chats.get(chatId, id -> new ChatEntries());
+        chatEntries.lock.lock();
+        try {
+            chatEntries.entries.addFirst(entry);
+            while (chatEntries.entries.size() > maxEntriesPerChat) {
+                chatEntries.entries.removeLast();
+            }
+        } finally {
+            chatEntries.lock.unlock();
+        }
+    }
+
+    public void invalidate(String chatId) {
+        chats.invalidate(chatId);
+    }
+
+    @EventListener
+    public void onDocumentsChanged(DocumentsChangedEvent event) {
+        if (event.chatId() == null || event.chatId().isEmpty()) {
+            // Global documents can show up in any chat
+            chats.invalidateAll();
+        } else {
+            chats.invalidate(event.chatId());
+        }
+        log.debug("Answer cache invalidated for Chat ID {}", event.chatId());
+    }
+
+    private static float[] normalized(float[] vector) {
+        double norm = Math.sqrt(dot(vector, vector));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = norm == 0 ? 0f : (float) (vector[i] / norm);
+        }
+        return result;
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
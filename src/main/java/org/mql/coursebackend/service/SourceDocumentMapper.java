@@ -0,0 +1,53 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+
+import org.mql.coursebackend.dto.ChatResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Maps retrieved contents to the sources returned with an answer. Runs on every
+ * chat request; kept stateless so it can be benchmarked on its own.
+ */
+public final class SourceDocumentMapper {
+
+    private SourceDocumentMapper() {
+    }
+
+    public static List<ChatResponse.SourceDocument> toSourceDocuments(List<Content> contents, String answer) {
+        if (contents == null || isAnswerNegative(answer)) {
+            return new ArrayList<>();
+        }
+        return contents.stream()
+                .map(content -> {
+                    TextSegment segment = content.textSegment();
+                    String filename = segment.metadata().getString("filename");
+                    String chunkIndexStr = segment.metadata().getString("chunk_index");
+                    int chunkIndex = chunkIndexStr != null ? Integer.parseInt(chunkIndexStr) : 0;
+
+                    String text = segment.text();
+                    String excerpt = text.length() > 200 ? text.substring(0, 200) + "..." : text;
+
+                    return ChatResponse.SourceDocument.builder()
+                            .filename(filename != null ? filename : "Unknown")
+                            .excerpt(excerpt)
+                            .chunkIndex(chunkIndex)
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+
+    public static boolean isAnswerNegative(String answer) {
+        if (answer == null)
+            return true;
+        String lower = answer.toLowerCase();
+        return lower.contains("i cannot answer")
+                || (lower.contains("i cannot") && lower.contains("provided documents"))
+                || lower.contains("i cannot answer this question based on the provided documents")
+                || (lower.contains("don't know") && lower.contains("context"));
+    }
+}
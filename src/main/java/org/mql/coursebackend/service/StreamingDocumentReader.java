@@ -0,0 +1,206 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Chunks a document while Tika is still parsing it.
+ * <p>
+ * Tika runs on a separate thread and hands text over in blocks (a PDF page, or
+ * about {@code blockChars} characters) through a small bounded queue. Each block
+ * is split together with the unfinished last segment of the previous one, so
+ * only a few blocks and segments are in memory at once, whatever the file size.
+ * Chunks carry {@code chunk_index} but not {@code total_chunks}, which is unknown
+ * until the end.
+ */
+class StreamingDocumentReader implements Iterator<TextSegment>, AutoCloseable {
+
+    private static final int QUEUE_CAPACITY = 4;
+    private static final Object END = new Object();
+
+    private final BlockingQueue<Object> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Deque<TextSegment> ready = new ArrayDeque<>();
+    private final Metadata metadata;
+    private final DocumentSplitter splitter;
+    private final Future<?> parsing;
+
+    private String carry = "";
+    private int chunkIndex;
+    private boolean finished;
+
+    StreamingDocumentReader(InputStream inputStream, Metadata metadata, DocumentSplitter splitter,
+            ExecutorService parseExecutor, int blockChars) {
+        this.metadata = metadata;
+        this.splitter = splitter;
+        this.parsing = parseExecutor.submit(() -> parse(inputStream, blockChars));
+    }
+
+    private void parse(InputStream inputStream, int blockChars) {
+        Object last = END;
+        try {
+            Parser parser = new AutoDetectParser();
+            BlockHandler blockHandler = new BlockHandler(blockChars);
+            // Only the XHTML body; <head> carries the title and meta text, which is not document content
+            parser.parse(inputStream, new BodyContentHandler(blockHandler), new org.apache.tika.metadata.Metadata(),
+                    new ParseContext());
+            blockHandler.flush();
+        } catch (Exception e) {
+            last = e;
+        }
+        try {
+            blocks.put(last);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (ready.isEmpty() && !finished) {
+            readBlock();
+        }
+        return !ready.isEmpty();
+    }
+
+    @Override
+    public TextSegment next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return ready.poll();
+    }
+
+    private void readBlock() {
+        Object block;
+        try {
+            block = blocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while parsing", e));
+        }
+        if (block instanceof Exception error) {
+            throw new UncheckedIOException(new IOException("Failed to parse document", error));
+        }
+
+        boolean last = block == END;
+        // The carried segment was trimmed by the splitter, so put a separator back
+        String text = last ? carry : carry.isEmpty() ? (String) block : carry + " " + block;
+        if (text.isBlank()) {
+            finished = last;
+            return;
+        }
+        List<TextSegment> segments = splitter.split(Document.from(text));
+        // The last segment may continue in the next block; keep it back and split it again with that block
+        int emit = last ? segments.size() : segments.size() - 1;
+        for (int i = 0; i < emit; i++) {
+            Metadata chunkMetadata = metadata.copy();
+            chunkMetadata.put("chunk_index", String.valueOf(chunkIndex++));
+            ready.add(TextSegment.from(segments.get(i).text(), chunkMetadata));
+        }
+        carry = last || segments.isEmpty() ? "" : segments.get(segments.size() - 1).text();
+        finished = last;
+    }
+
+    int chunkCount() {
+        return chunkIndex;
+    }
+
+    @Override
+    public void close() {
+        // Unblocks and stops the parser if the pipeline gave up early
+        parsing.cancel(true);
+    }
+
+    private final class BlockHandler extends DefaultHandler {
+        private final int blockChars;
+        private final StringBuilder buffer = new StringBuilder();
+
+        private BlockHandler(int blockChars) {
+            this.blockChars = blockChars;
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) throws SAXException {
+            buffer.append(ch, start, length);
+            if (buffer.length() >= blockChars * 2) {
+                // Long run without structure: cut at the last whitespace so no word is split
+                int cut = buffer.length();
+                while (cut > blockChars && !Character.isWhitespace(buffer.charAt(cut - 1))) {
+                    cut--;
+                }
+                String rest = buffer.substring(cut);
+                buffer.setLength(cut);
+                flush();
+                buffer.append(rest);
+            }
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            buffer.append(ch, start, length);
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            // Tika marks PDF pages as <div class="page">
+            if ("div".equals(localName) && "page".equals(attributes.getValue("class"))) {
+                flush();
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            switch (localName) {
+                case "p", "div", "h1", "h2", "h3", "h4", "h5", "h6", "li", "tr" -> buffer.append("\n\n");
+                case "br" -> buffer.append('\n');
+                default -> {
+                    return;
+                }
+            }
+            if (buffer.length() >= blockChars) {
+                flush();
+            }
+        }
+
+        @Override
+        public void endDocument() throws SAXException {
+            flush();
+        }
+
+        private void flush() throws SAXException {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            try {
+                blocks.put(buffer.toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SAXException("Parsing cancelled", e);
+            }
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package org.mql.coursebackend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Two-level cache in front of {@link WebScraperService}: normalized search query
+ * to result URLs, and URL to extracted page text. Both levels expire after a TTL,
+ * are bounded by an estimated byte size and can be spilled to disk so they
+ * survive restarts. Empty results are never cached.
+ */
+@Component
+@Slf4j
+public class WebContentCache {
+
+    record SearchEntry(List<String> urls, long storedAt) {
+    }
+
+    record PageEntry(String text, long storedAt) {
+    }
+
+    private final Cache<String, SearchEntry> searchCache;
+    private final Cache<String, PageEntry> pageCache;
+    private final Duration searchTtl;
+    private final Duration pageTtl;
+    private final String spillDirectory;
+    private final Map<String, CompletableFuture<SearchEntry>> searchesInFlight = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<PageEntry>> pagesInFlight = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public WebContentCache(MeterRegistry meterRegistry,
+            @Value("${course.rag.web.cache.search-ttl:6h}") Duration searchTtl,
+            @Value("${course.rag.web.cache.page-ttl:24h}") Duration pageTtl,
+            @Value("${course.rag.web.cache.search-max-size:4MB}") DataSize searchMaxSize,
+            @Value("${course.rag.web.cache.page-max-size:64MB}") DataSize pageMaxSize,
+            @Value("${course.rag.web.cache.spill-directory:}") String spillDirectory) {
+        this.searchTtl = searchTtl;
+        this.pageTtl = pageTtl;
+        this.spillDirectory = spillDirectory;
+
+        this.searchCache = Caffeine.newBuilder()
+                .maximumWeight(searchMaxSize.toBytes())
+                .weigher((String query, SearchEntry entry) -> estimateBytes(query)
+                        + entry.urls().stream().mapToInt(WebContentCache::estimateBytes).sum())
+                .expireAfter(expireAt(SearchEntry::storedAt, searchTtl))
+                .recordStats()
+                .build();
+        this.pageCache = Caffeine.newBuilder()
+                .maximumWeight(pageMaxSize.toBytes())
+                .weigher((String url, PageEntry entry) -> estimateBytes(url) + estimateBytes(entry.text()))
+                .expireAfter(expireAt(PageEntry::storedAt, pageTtl))
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, searchCache, "course.web.search");
+        CaffeineCacheMetrics.monitor(meterRegistry, pageCache, "course.web.pages");
+    }
+
+    public List<String> urls(String query, Function<String, List<String>> search) {
+        SearchEntry entry = load(searchCache, searchesInFlight, normalize(query), () -> {
+            List<String> urls = search.apply(query);
+            return urls.isEmpty() ? null : new SearchEntry(List.copyOf(urls), System.currentTimeMillis());
+        });
+        return entry != null ? entry.urls() : List.of();
+    }
+
+    public String page(String url, Function<String, String> scrape) {
+        PageEntry entry = load(pageCache, pagesInFlight, url, () -> {
+            String text = scrape.apply(url);
+            return text == null || text.isEmpty() ? null : new PageEntry(text, System.currentTimeMillis());
+        });
+        return entry != null ? entry.text() : "";
+    }
+
+    /**
+     * Loads a missing entry once for concurrent callers of the same key. Unlike
+     * {@code Cache.get(key, loader)}, the network call does not run inside the
+     * cache's map compute (a {@code synchronized} block that would pin a virtual
+     * thread to its carrier for the whole fetch).
+     */
+    private static <V> V load(Cache<String, V> cache, Map<String, CompletableFuture<V>> inFlight, String key,
+            Supplier<V> loader) {
+        V cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, loading);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+        try {
+            V value = loader.get();
+            if (value != null) {
+                cache.put(key, value);
+            }
+            loading.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, loading);
+        }
+    }
+
+    static String normalize(String query) {
+        return query.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+    }
+
+    @PostConstruct
+    public void load() {
+        if (spillDirectory.isBlank()) {
+            return;
+        }
+        int searches = restore(new File(spillDirectory, "web-search-cache.json"),
+                new TypeReference<Map<String, SearchEntry>>() {
+                }, searchCache, SearchEntry::storedAt, searchTtl);
+        int pages = restore(new File(spillDirectory, "web-page-cache.json"),
+                new TypeReference<Map<String, PageEntry>>() {
+                }, pageCache, PageEntry::storedAt, pageTtl);
+        log.info("Restored {} search results and {} pages from the web cache spill", searches, pages);
+    }
+
+    @PreDestroy
+    public void spill() {
+        if (spillDirectory.isBlank()) {
+            return;
+        }
+        File directory = new File(spillDirectory);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            log.warn("Cannot create web cache spill directory {}", directory);
+            return;
+        }
+        try {
+            objectMapper.writeValue(new File(directory, "web-search-cache.json"), new HashMap<>(searchCache.asMap()));
+            objectMapper.writeValue(new File(directory, "web-page-cache.json"), new HashMap<>(pageCache.asMap()));
+        } catch (IOException e) {
+            log.warn("Failed to spill web cache: {}", e.getMessage());
+        }
+    }
+
+    private <V> int restore(File file, TypeReference<Map<String, V>> type, Cache<String, V> cache,
+            Function<V, Long> storedAt, Duration ttl) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            Map<String, V> entries = objectMapper.readValue(file, type);
+            entries.entrySet().removeIf(e -> storedAt.apply(e.getValue()) + ttl.toMillis() <= now);
+            cache.putAll(entries);
+            return entries.size();
+        } catch (IOException e) {
+            log.warn("Failed to restore web cache from {}: {}", file, e.getMessage());
+            return 0;
+        }
+    }
+
+    /** Expires an entry TTL after it was first stored, including across restarts. */
+    private static <V> Expiry<String, V> expireAt(Function<V, Long> storedAt, Duration ttl) {
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, V value, long currentTime) {
+                long remainingMs = storedAt.apply(value) + ttl.toMillis() - System.currentTimeMillis();
+                return Duration.ofMillis(Math.max(0, remainingMs)).toNanos();
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+
+    private static int estimateBytes(String value) {
+        return 40 + 2 * value.length();
+    }
+}
@@ -5,6 +5,7 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.springframework.stereotype.Service;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.net.URLEncoder;
@@ -13,12 +14,27 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class WebScraperService {
 
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
 
+    private final WebContentCache webContentCache;
+
     public List<String> search(String query) {
+        return webContentCache.urls(query, this::fetchSearchResults);
+    }
+
+    public String scrape(String url) {
+        return scrape(url, 5000);
+    }
+
+    public String scrape(String url, int timeoutMillis) {
+        return webContentCache.page(url, u -> fetchPage(u, timeoutMillis));
+    }
+
+    private List<String> fetchSearchResults(String query) {
         List<String> urls = new ArrayList<>();
         try {
             String encodedQuery = URLEncoder.encode(query, StandardCharsets.UTF_8);
@@ -45,12 +61,12 @@ public class WebScraperService {
         return urls;
     }
 
-    public String scrape(String url) {
+    private String fetchPage(String url, int timeoutMillis) {
         try {
             log.info("Scraping URL: {}", url);
             Document doc = Jsoup.connect(url)
                     .userAgent(USER_AGENT)
-                    .timeout(5000)
+                    .timeout(timeoutMillis)
                     .get();
 
             doc.select("script, style, nav, footer, header").remove();
@@ -0,0 +1,142 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Bm25IndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void identifiersSurviveTokenization() {
+        assertThat(Bm25Index.tokenize("Use ArrayList, not max_depth-2!"))
+                .containsExactly("use", "arraylist", "not", "max_depth", "2");
+    }
+
+    @Test
+    void moreMatchedAndRepeatedTermsRankFirst() {
+        Bm25Index index = new Bm25Index("");
+        index.add(List.of(
+                chunk("chat-1", "doc-a", 0, "the network learns weights"),
+                chunk("chat-1", "doc-a", 1, "backpropagation computes the gradient of the network"),
+                chunk("chat-1", "doc-a", 2, "backpropagation backpropagation through time"),
+                chunk("chat-1", "doc-a", 3, "a cooking recipe")));
+
+        List<Content> results = index.search("chat-1", "backpropagation network", 3);
+
+        assertThat(texts(results)).containsExactly(
+                "backpropagation computes the gradient of the network",
+                "backpropagation backpropagation through time",
+                "the network learns weights");
+        assertThat(index.search("chat-1", "unrelated words", 3)).isEmpty();
+    }
+
+    @Test
+    void chatsAreSearchedSeparately() {
+        Bm25Index index = new Bm25Index("");
+        index.add(List.of(
+                chunk("chat-1", "doc-a", 0, "gradient descent"),
+                chunk("chat-2", "doc-b", 0, "gradient clipping"),
+                chunk(null, "doc-c", 0, "gradient checkpointing")));
+
+        assertThat(texts(index.search("chat-1", "gradient", 5))).containsExactly("gradient descent");
+        assertThat(texts(index.search(null, "gradient", 5))).containsExactly("gradient checkpointing");
+        assertThat(index.search("chat-3", "gradient", 5)).isEmpty();
+    }
+
+    @Test
+    void removedChunksAreNoLongerFound() {
+        Bm25Index index = new Bm25Index("");
+        index.add(List.of(
+                chunk("chat-1", "doc-a", 0, "gradient descent"),
+                chunk("chat-1", "doc-b", 0, "gradient clipping"),
+                chunk("chat-2", "doc-c", 0, "gradient noise")));
+
+        index.remove("chat-1", metadata -> "doc-a".equals(metadata.getString("document_id")));
+        assertThat(texts(index.search("chat-1", "gradient", 5))).containsExactly("gradient clipping");
+
+        index.removeChat("chat-1");
+        assertThat(index.search("chat-1", "gradient", 5)).isEmpty();
+        assertThat(texts(index.search("chat-2", "gradient", 5))).containsExactly("gradient noise");
+    }
+
+    @Test
+    void flushedIndexIsRebuiltOnLoad() {
+        String file = directory.resolve("lexical-index.bin").toString();
+        Bm25Index index = new Bm25Index(file);
+        index.add(List.of(
+                chunk("chat-1", "doc-a", 0, "gradient descent moves the weights"),
+                chunk(null, "doc-b", 4, "attention weighs tokens")));
+        index.flush();
+
+        Bm25Index reloaded = new Bm25Index(file);
+        reloaded.load();
+
+        List<Content> results = reloaded.search("chat-1", "gradient", 5);
+        assertThat(texts(results)).containsExactly("gradient descent moves the weights");
+        Metadata metadata = results.get(0).textSegment().metadata();
+        assertThat(metadata.getString("document_id")).isEqualTo("doc-a");
+        assertThat(metadata.getString("chunk_index")).isEqualTo("0");
+        assertThat(texts(reloaded.search(null, "attention", 5))).containsExactly("attention weighs tokens");
+    }
+
+    @Test
+    void cleanIndexIsNotRewritten() throws Exception {
+        Path file = directory.resolve("lexical-index.bin");
+        Bm25Index index = new Bm25Index(file.toString());
+        index.flush();
+        assertThat(file).doesNotExist();
+
+        index.add(List.of(chunk("chat-1", "doc-a", 0, "gradient descent")));
+        index.flush();
+        long written = Files.getLastModifiedTime(file).toMillis();
+        Files.setLastModifiedTime(file, FileTime.fromMillis(written - 60_000));
+        index.flush();
+
+        assertThat(Files.getLastModifiedTime(file).toMillis()).isEqualTo(written - 60_000);
+    }
+
+    @Test
+    void failedFlushIsRetried() throws Exception {
+        Path blocker = directory.resolve("not-a-directory");
+        Files.writeString(blocker, "");
+        Path file = blocker.resolve("lexical-index.bin");
+        Bm25Index index = new Bm25Index(file.toString());
+        index.add(List.of(chunk("chat-1", "doc-a", 0, "gradient descent")));
+
+        index.flush();
+        assertThat(Files.isRegularFile(file)).isFalse();
+
+        // Nothing was added since, yet the next flush still writes the index
+        Files.delete(blocker);
+        index.flush();
+        assertThat(file).exists();
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        return contents.stream().map(content -> content.textSegment().text()).toList();
+    }
+
+    private static TextSegment chunk(String chatId, String documentId, int index, String text) {
+        Map<String, Object> metadata = new HashMap<>();
+        if (chatId != null) {
+            metadata.put("chatId", chatId);
+        }
+        metadata.put("document_id", documentId);
+        metadata.put("chunk_index", String.valueOf(index));
+        return TextSegment.from(text, Metadata.from(metadata));
+    }
+}
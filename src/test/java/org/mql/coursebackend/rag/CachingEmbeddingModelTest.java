@@ -0,0 +1,53 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingEmbeddingModelTest {
+
+    private final EmbeddingModel delegate = mock(EmbeddingModel.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CachingEmbeddingModel model = new CachingEmbeddingModel(delegate, 100, "", meterRegistry,
+            Timer.builder("test.embed").register(meterRegistry));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void embedsTheOriginalTextOncePerNormalizedKey() {
+        when(delegate.embedAll(anyList())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            List<Embedding> embeddings = new ArrayList<>();
+            for (TextSegment segment : segments) {
+                embeddings.add(Embedding.from(new float[] {segment.text().length(), 1}));
+            }
+            return Response.from(embeddings);
+        });
+
+        List<Embedding> first = model.embedAll(List.of(
+                TextSegment.from("What is  BERT?"),
+                TextSegment.from("what is bert?"),
+                TextSegment.from("Explain ReLU"))).content();
+        List<Embedding> second = model.embedAll(List.of(TextSegment.from("WHAT IS BERT?"))).content();
+
+        ArgumentCaptor<List<TextSegment>> sent = ArgumentCaptor.forClass(List.class);
+        verify(delegate, times(1)).embedAll(sent.capture());
+        assertThat(sent.getValue()).extracting(TextSegment::text).containsExactly("What is  BERT?", "Explain ReLU");
+        assertThat(first.get(1).vector()).isEqualTo(first.get(0).vector());
+        assertThat(second.get(0).vector()).isEqualTo(first.get(0).vector());
+    }
+}
@@ -0,0 +1,69 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.Tokenizer;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ContextAssemblerTest {
+
+    private final Tokenizer tokenizer = mock(Tokenizer.class);
+    private final ContentAggregator delegate = mock(ContentAggregator.class);
+
+    ContextAssemblerTest() {
+        // One token per word
+        when(tokenizer.estimateTokenCountInText(anyString()))
+                .thenAnswer(invocation -> invocation.<String>getArgument(0).split("\\s+").length);
+    }
+
+    @Test
+    void consecutiveChunksMergeOnlyWithinOneDocument() {
+        List<Content> merged = ContextAssembler.merge(List.of(
+                chunk("doc-a", "notes.pdf", 0, "gradient descent moves the weights"),
+                chunk("doc-b", "notes.pdf", 1, "attention weighs every token pair"),
+                chunk("doc-a", "notes.pdf", 1, "along the negative gradient direction")));
+
+        assertThat(merged).hasSize(2);
+        assertThat(merged.get(0).textSegment().text())
+                .isEqualTo("gradient descent moves the weights\nalong the negative gradient direction");
+        assertThat(merged.get(0).textSegment().metadata().getString("chunk_end")).isEqualTo("1");
+        assertThat(merged.get(1).textSegment().text()).isEqualTo("attention weighs every token pair");
+    }
+
+    @Test
+    void bestBlockIsTruncatedToTheBudget() {
+        String longText = "word ".repeat(200).trim();
+        when(delegate.aggregate(any())).thenReturn(List.of(
+                chunk("doc-a", "long.pdf", 0, longText),
+                chunk("doc-b", "short.pdf", 0, "short block")));
+        ContextAssembler assembler = new ContextAssembler(delegate, tokenizer, 50);
+
+        List<Content> packed = assembler.aggregate(Map.of());
+
+        assertThat(packed).hasSize(1);
+        assertThat(tokenizer.estimateTokenCountInText(packed.get(0).textSegment().text()))
+                .isPositive()
+                .isLessThanOrEqualTo(50);
+        assertThat(packed.get(0).textSegment().metadata().getString("document_id")).isEqualTo("doc-a");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Content chunk(String documentId, String filename, int index, String text) {
+        Metadata metadata = new Metadata();
+        metadata.add("document_id", documentId);
+        metadata.add("filename", filename);
+        metadata.add("chunk_index", String.valueOf(index));
+        return Content.from(TextSegment.from(text, metadata));
+    }
+}
@@ -0,0 +1,74 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmbeddedVectorStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotRoundTripsIdsSegmentsAndVectors() {
+        String file = directory.resolve("vectors.bin").toString();
+        EmbeddedVectorStore store = new EmbeddedVectorStore(file);
+        List<String> ids = store.addAll(embeddings(300), segments(300));
+        store.flush();
+
+        EmbeddedVectorStore reloaded = new EmbeddedVectorStore(file);
+        reloaded.load();
+
+        Map<String, TextSegment> visited = new LinkedHashMap<>();
+        reloaded.forEach(visited::put);
+        assertThat(visited.keySet()).containsExactlyInAnyOrderElementsOf(ids);
+        assertThat(visited.get(ids.get(7)).text()).isEqualTo("chunk 7");
+        assertThat(visited.get(ids.get(7)).metadata().getString("chatId")).isEqualTo("chat-1");
+    }
+
+    @Test
+    void failedFlushKeepsTheStoreDirty() throws Exception {
+        Path missing = directory.resolve("not-yet").resolve("vectors.bin");
+        EmbeddedVectorStore store = new EmbeddedVectorStore(missing.toString());
+        store.addAll(embeddings(3), segments(3));
+
+        store.flush();
+        assertThat(missing).doesNotExist();
+
+        // Nothing was added since, yet the next flush still writes the snapshot
+        Files.createDirectories(missing.getParent());
+        store.flush();
+        assertThat(missing).exists();
+    }
+
+    private static List<Embedding> embeddings(int count) {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            embeddings.add(Embedding.from(new float[] {i + 1, 1, 0, 0}));
+        }
+        return embeddings;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static List<TextSegment> segments(int count) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Metadata metadata = new Metadata();
+            metadata.add("chatId", "chat-1");
+            metadata.add("chunk_index", String.valueOf(i));
+            segments.add(TextSegment.from("chunk " + i, metadata));
+        }
+        return segments;
+    }
+}
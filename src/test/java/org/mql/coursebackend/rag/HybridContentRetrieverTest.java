@@ -0,0 +1,43 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HybridContentRetrieverTest {
+
+    @Test
+    void chunksFoundByBothRetrieversRankFirst() {
+        Content shared = chunk("doc-a", 3, "gradient descent");
+        List<Content> fused = HybridContentRetriever.fuse(List.of(
+                List.of(chunk("doc-a", 1, "dense only"), shared),
+                List.of(chunk("doc-a", 2, "lexical only"), chunk("doc-a", 3, "gradient descent"))), 10);
+
+        assertThat(fused).hasSize(3);
+        assertThat(fused.get(0).textSegment().text()).isEqualTo("gradient descent");
+    }
+
+    @Test
+    void sameFilenameAndIndexInTwoDocumentsAreDistinctChunks() {
+        List<Content> fused = HybridContentRetriever.fuse(List.of(
+                List.of(chunk("doc-a", 0, "first upload")),
+                List.of(chunk("doc-b", 0, "second upload"))), 10);
+
+        assertThat(fused).extracting(content -> content.textSegment().text())
+                .containsExactlyInAnyOrder("first upload", "second upload");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Content chunk(String documentId, int index, String text) {
+        Metadata metadata = new Metadata();
+        metadata.add("document_id", documentId);
+        metadata.add("filename", "lecture.pdf");
+        metadata.add("chunk_index", String.valueOf(index));
+        return Content.from(TextSegment.from(text, metadata));
+    }
+}
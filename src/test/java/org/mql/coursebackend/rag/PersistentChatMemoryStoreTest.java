@@ -0,0 +1,135 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.DefaultContentInjector;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.repository.ChatMessageRepository;
+import org.mql.coursebackend.service.ChatMessageWriter;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PersistentChatMemoryStoreTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 5, 10, 0);
+
+    private final ChatMessageRepository repository = mock(ChatMessageRepository.class);
+    private final ChatMessageWriter writer = mock(ChatMessageWriter.class);
+    // Messages accepted by the writer but not yet in the table
+    private final List<org.mql.coursebackend.entity.ChatMessage> pending = new ArrayList<>();
+    private final PersistentChatMemoryStore store = new PersistentChatMemoryStore(repository, writer,
+            new SimpleMeterRegistry(), 4, 100);
+
+    PersistentChatMemoryStoreTest() {
+        when(writer.withPending(anyString(), any())).thenAnswer(invocation -> {
+            Supplier<List<org.mql.coursebackend.entity.ChatMessage>> stored = invocation.getArgument(1);
+            List<org.mql.coursebackend.entity.ChatMessage> merged = new ArrayList<>(stored.get());
+            merged.addAll(pending);
+            return merged;
+        });
+    }
+
+    @Test
+    void coldWindowHoldsTheLatestTurnsWithoutTheQuestionBeingAnswered() {
+        // Newest first, as the limited query returns them
+        when(repository.findByChatIdOrderByCreatedAtDesc(eq("chat-1"), any(Pageable.class))).thenReturn(List.of(
+                row(5, "AI", "a2"), row(4, "USER", "q2"), row(3, "AI", " "), row(2, "USER", "q1")));
+        pending.add(row(6, "USER", "q3"));
+
+        List<ChatMessage> window = store.getMessages("chat-1");
+
+        // Five rows with the pending one are trimmed to four; q3 is being answered; the blank AI row is skipped
+        assertThat(window).containsExactly(UserMessage.from("q2"), AiMessage.from("a2"));
+    }
+
+    @Test
+    void pendingMessagesPushOlderRowsOutOfTheWindow() {
+        when(repository.findByChatIdOrderByCreatedAtDesc(eq("chat-1"), any(Pageable.class))).thenReturn(List.of(
+                row(4, "AI", "a2"), row(3, "USER", "q2"), row(2, "AI", "a1"), row(1, "USER", "q1")));
+        pending.add(row(5, "USER", "q3"));
+        pending.add(row(6, "AI", "a3"));
+
+        assertThat(store.getMessages("chat-1")).containsExactly(
+                UserMessage.from("q2"), AiMessage.from("a2"), UserMessage.from("q3"), AiMessage.from("a3"));
+    }
+
+    @Test
+    void hotWindowKeepsQuestionsWithoutTheirRetrievedContext() {
+        when(repository.findByChatIdOrderByCreatedAtDesc(eq("chat-1"), any(Pageable.class))).thenReturn(List.of());
+        ChatMemory memory = store.memoryFor("chat-1");
+        DefaultContentInjector injector = new DefaultContentInjector(PersistentChatMemoryStore.CONTEXT_PROMPT);
+
+        memory.add(SystemMessage.from("You are a course assistant."));
+        memory.add(injector.inject(List.of(Content.from(TextSegment.from("Backpropagation applies the chain rule."))),
+                UserMessage.from("What is backpropagation?")));
+        memory.add(AiMessage.from("The chain rule applied layer by layer."));
+
+        assertThat(store.getMessages("chat-1")).containsExactly(
+                SystemMessage.from("You are a course assistant."),
+                UserMessage.from("What is backpropagation?"),
+                AiMessage.from("The chain rule applied layer by layer."));
+    }
+
+    @Test
+    void hotAndColdWindowsOfAChatMatch() {
+        when(repository.findByChatIdOrderByCreatedAtDesc(eq("chat-1"), any(Pageable.class))).thenReturn(List.of(
+                row(2, "AI", "The chain rule applied layer by layer."), row(1, "USER", "What is backpropagation?")));
+        PersistentChatMemoryStore hot = new PersistentChatMemoryStore(repository, writer,
+                new SimpleMeterRegistry(), 4, 100);
+        DefaultContentInjector injector = new DefaultContentInjector(PersistentChatMemoryStore.CONTEXT_PROMPT);
+        hot.updateMessages("chat-1", List.of(
+                injector.inject(List.of(Content.from(TextSegment.from("Backpropagation applies the chain rule."))),
+                        UserMessage.from("What is backpropagation?")),
+                AiMessage.from("The chain rule applied layer by layer.")));
+
+        assertThat(hot.getMessages("chat-1")).isEqualTo(store.getMessages("chat-1"));
+    }
+
+    @Test
+    void appendedTurnsKeepTheSystemMessageAndTheWindowSize() {
+        when(repository.findByChatIdOrderByCreatedAtDesc(eq("chat-1"), any(Pageable.class))).thenReturn(List.of());
+        store.updateMessages("chat-1", List.of(SystemMessage.from("system"),
+                UserMessage.from("q1"), AiMessage.from("a1")));
+
+        store.appendTurn("chat-1", "q2", "a2");
+
+        assertThat(store.getMessages("chat-1")).containsExactly(
+                SystemMessage.from("system"), AiMessage.from("a1"), UserMessage.from("q2"), AiMessage.from("a2"));
+    }
+
+    @Test
+    void appendingToAColdWindowLoadsNothing() {
+        store.appendTurn("chat-2", "q1", "a1");
+
+        when(repository.findByChatIdOrderByCreatedAtDesc(eq("chat-2"), any(Pageable.class))).thenReturn(List.of(
+                row(2, "AI", "a1"), row(1, "USER", "q1")));
+        assertThat(store.getMessages("chat-2")).containsExactly(UserMessage.from("q1"), AiMessage.from("a1"));
+    }
+
+    private static org.mql.coursebackend.entity.ChatMessage row(long id, String type, String content) {
+        return org.mql.coursebackend.entity.ChatMessage.builder()
+                .id(id)
+                .chatId("chat-1")
+                .type(type)
+                .content(content)
+                .createdAt(START.plusMinutes(id))
+                .build();
+    }
+}
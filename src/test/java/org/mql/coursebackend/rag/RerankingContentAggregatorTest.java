@@ -0,0 +1,64 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RerankingContentAggregatorTest {
+
+    private final LexicalOverlapScorer scorer = new LexicalOverlapScorer();
+
+    @Test
+    void rareQueryTermsWeighMoreThanCommonOnes() {
+        double[] scores = scorer.score("What is backpropagation gradient?", List.of(
+                chunk(0, "gradient descent"),
+                chunk(1, "backpropagation uses the gradient"),
+                chunk(2, "gradient clipping"),
+                chunk(3, "backpropagation through time"),
+                chunk(4, "sunny weather")));
+
+        assertThat(scores[1]).isCloseTo(1.0, within(1e-9));
+        assertThat(scores[3]).isGreaterThan(scores[0]);
+        assertThat(scores[0]).isEqualTo(scores[2]).isPositive();
+        assertThat(scores[4]).isZero();
+    }
+
+    @Test
+    void queryOfStopWordsScoresNothing() {
+        double[] scores = scorer.score("what is the", List.of(chunk(0, "what is the gradient")));
+
+        assertThat(scores).containsExactly(0.0);
+    }
+
+    @Test
+    void relevantLowRankedCandidateMovesUpAndPoolIsCut() {
+        RerankingContentAggregator aggregator = new RerankingContentAggregator(scorer, 2);
+        List<Content> retrieved = List.of(
+                chunk(0, "sunny weather all week"),
+                chunk(1, "neural networks have layers"),
+                chunk(2, "backpropagation computes the gradient of the loss"));
+
+        List<Content> kept = aggregator.aggregate(Map.of(
+                Query.from("backpropagation gradient"), List.of(retrieved)));
+
+        assertThat(kept).extracting(content -> content.textSegment().text())
+                .containsExactly("backpropagation computes the gradient of the loss", "sunny weather all week");
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Content chunk(int index, String text) {
+        Metadata metadata = new Metadata();
+        metadata.add("document_id", "doc-a");
+        metadata.add("filename", "lecture.pdf");
+        metadata.add("chunk_index", String.valueOf(index));
+        return Content.from(TextSegment.from(text, metadata));
+    }
+}
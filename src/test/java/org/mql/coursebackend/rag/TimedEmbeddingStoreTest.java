@@ -0,0 +1,67 @@
+package org.mql.coursebackend.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.TokenUsage;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TimedEmbeddingStoreTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RagMetrics metrics = new RagMetrics(registry);
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchesAreTimedUnderTheirStageAndWritesAreNot() {
+        EmbeddingStore<TextSegment> delegate = mock(EmbeddingStore.class);
+        when(delegate.search(any())).thenReturn(new EmbeddingSearchResult<>(List.of()));
+        TimedEmbeddingStore store = new TimedEmbeddingStore(delegate, metrics.stage("vector_search"));
+        Embedding query = Embedding.from(new float[] {1, 0});
+
+        store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(3).build());
+        store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(3).build());
+        store.add(query, TextSegment.from("gradient descent"));
+
+        Timer vectorSearch = registry.find("course.rag.stage").tag("stage", "vector_search").timer();
+        assertThat(vectorSearch).isNotNull();
+        assertThat(vectorSearch.count()).isEqualTo(2);
+        assertThat(registry.find("course.rag.stage").timers()).hasSize(1);
+        verify(delegate).add(query, TextSegment.from("gradient descent"));
+    }
+
+    @Test
+    void eachStageGetsItsOwnTaggedTimer() {
+        metrics.time("session_check", () -> {
+        });
+        String answer = metrics.time("llm_generation", () -> "answer");
+
+        assertThat(answer).isEqualTo("answer");
+        assertThat(metrics.stage("session_check")).isSameAs(metrics.stage("session_check"));
+        assertThat(registry.find("course.rag.stage").timers())
+                .extracting(timer -> timer.getId().getTag("stage"))
+                .containsExactlyInAnyOrder("session_check", "llm_generation");
+    }
+
+    @Test
+    void tokenUsageIsCountedByType() {
+        metrics.recordTokenUsage(new TokenUsage(120, 30));
+        metrics.recordTokenUsage(new TokenUsage(80, null));
+        metrics.recordTokenUsage(null);
+
+        assertThat(registry.get("course.llm.tokens").tag("type", "prompt").counter().count()).isEqualTo(200.0);
+        assertThat(registry.get("course.llm.tokens").tag("type", "completion").counter().count()).isEqualTo(30.0);
+    }
+}
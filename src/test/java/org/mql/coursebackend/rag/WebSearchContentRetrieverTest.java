@@ -0,0 +1,123 @@
+package org.mql.coursebackend.rag;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.service.WebContentCache;
+import org.mql.coursebackend.service.WebScraperService;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+
+class WebSearchContentRetrieverTest {
+
+    private HttpServer pages;
+    private ExecutorService pageExecutor;
+    private ExecutorService fetchExecutor;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+
+    @BeforeEach
+    void startPages() throws IOException {
+        pages = HttpServer.create(new InetSocketAddress("localhost", 0), 64);
+        pages.createContext("/fast", exchange -> respond(exchange, 0));
+        pages.createContext("/slow", exchange -> respond(exchange, 3000));
+        pages.createContext("/medium", exchange -> respond(exchange, 300));
+        pageExecutor = Executors.newCachedThreadPool();
+        pages.setExecutor(pageExecutor);
+        pages.start();
+        fetchExecutor = Executors.newFixedThreadPool(16);
+    }
+
+    @AfterEach
+    void stopPages() {
+        pages.stop(0);
+        pageExecutor.shutdownNow();
+        fetchExecutor.shutdownNow();
+    }
+
+    @Test
+    void slowPagesCostTheDeadlineNotTheSumOfTheirTimeouts() {
+        List<String> urls = new ArrayList<>();
+        urls.add(url("/fast/1"));
+        for (int i = 0; i < 4; i++) {
+            urls.add(url("/slow/" + i));
+        }
+        WebSearchContentRetriever retriever = retriever(urls, Duration.ofSeconds(1), 10);
+
+        long start = System.nanoTime();
+        List<Content> contents = retriever.retrieve(Query.from("gradient descent"));
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        // Four 3 s pages fetched one after another would take 12 s
+        assertThat(elapsedMs).isLessThan(2000);
+        assertThat(contents).hasSize(1);
+        assertThat(contents.get(0).textSegment().metadata().getString("filename")).isEqualTo(url("/fast/1"));
+    }
+
+    @Test
+    void fetchesPerHostStayWithinTheLimit() {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            urls.add(url("/medium/" + i));
+        }
+        WebSearchContentRetriever retriever = retriever(urls, Duration.ofSeconds(10), 2);
+
+        List<Content> contents = retriever.retrieve(Query.from("back propagation"));
+
+        assertThat(contents).hasSize(6);
+        assertThat(peak.get()).isLessThanOrEqualTo(2);
+    }
+
+    private WebSearchContentRetriever retriever(List<String> urls, Duration deadline, int maxFetchesPerHost) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WebContentCache cache = new WebContentCache(meterRegistry, Duration.ofHours(1), Duration.ofHours(1),
+                DataSize.ofMegabytes(1), DataSize.ofMegabytes(8), "");
+        // Real page fetches through Jsoup; only the search engine is replaced
+        WebScraperService scraper = spy(new WebScraperService(cache));
+        doReturn(urls).when(scraper).search(anyString());
+        return new WebSearchContentRetriever(scraper, fetchExecutor, deadline, maxFetchesPerHost,
+                new RagMetrics(meterRegistry));
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + pages.getAddress().getPort() + path;
+    }
+
+    private void respond(HttpExchange exchange, long delayMillis) throws IOException {
+        peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(delayMillis);
+            byte[] body = ("<html><body><p>Page " + exchange.getRequestURI().getPath() + "</p></body></html>")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // The client gave up at the deadline
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package org.mql.coursebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mql.coursebackend.entity.ChatMessage;
+import org.mql.coursebackend.entity.ChatSession;
+import org.mql.coursebackend.rag.RagMetrics;
+import org.mql.coursebackend.repository.ChatMessageRepository;
+import org.mql.coursebackend.repository.ChatSessionRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessageWriterTest {
+
+    private final ChatSessionRepository sessions = mock(ChatSessionRepository.class);
+    private final ChatMessageRepository messages = mock(ChatMessageRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    // Every message handed to saveAll that was not rejected
+    private final List<ChatMessage> saved = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private ChatMessageWriter writer;
+
+    ChatMessageWriterTest() {
+        when(sessions.findAllById(any())).thenReturn(List.of());
+        when(messages.saveAll(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> batch = invocation.getArgument(0);
+            batchSizes.add(batch.size());
+            saved.addAll(batch);
+            return batch;
+        });
+    }
+
+    @AfterEach
+    void stop() {
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void queuedMessagesAreWrittenInBatchesWithTheirSessions() {
+        writer = start(true, 3);
+        for (int i = 0; i < 120; i++) {
+            writer.write(message("chat-" + (i % 3), "message " + i));
+        }
+        writer.flush();
+
+        assertThat(saved).hasSize(120);
+        assertThat(batchSizes).allSatisfy(size -> assertThat(size).isLessThanOrEqualTo(50));
+        ArgumentCaptor<List<ChatSession>> created = captor();
+        verify(sessions, atLeastOnce()).saveAll(created.capture());
+        assertThat(created.getAllValues().stream().flatMap(List::stream).map(ChatSession::getId))
+                .containsExactlyInAnyOrder("chat-0", "chat-1", "chat-2");
+        assertThat(writer.withPending("chat-0", List::of)).isEmpty();
+    }
+
+    @Test
+    void pendingMessagesAreVisibleBeforeTheyAreWritten() throws Exception {
+        writer = start(true, 3);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        blockFirstSave(writing, release);
+
+        writer.write(message("chat-1", "first"));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        writer.write(message("chat-1", "second"));
+
+        assertThat(writer.withPending("chat-1", List::of)).extracting(ChatMessage::getContent)
+                .containsExactly("first", "second");
+        release.countDown();
+        writer.flush();
+        assertThat(writer.withPending("chat-1", List::of)).isEmpty();
+    }
+
+    @Test
+    void messagesOfADeletedChatAreNotWritten() throws Exception {
+        writer = start(true, 3);
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        blockFirstSave(writing, release);
+
+        // Holds the background thread, so the next messages are still queued when the chat is deleted
+        writer.write(message("other-chat", "blocker"));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        writer.write(message("chat-1", "queued before the delete"));
+        writer.forgetSession("chat-1");
+        release.countDown();
+        writer.flush();
+        // An answer that finishes after the delete
+        writer.write(message("chat-1", "late answer"));
+        writer.flush();
+
+        assertThat(saved).extracting(ChatMessage::getChatId).containsOnly("other-chat");
+        assertThat(writer.withPending("chat-1", List::of)).isEmpty();
+        assertThat(registry.get("course.chat.messages.dropped").tag("reason", "deleted_chat").counter().count())
+                .isEqualTo(2.0);
+    }
+
+    @Test
+    void failedBatchIsWrittenOneByOne() {
+        writer = start(true, 1000);
+        rejectBatchesContaining("poison");
+
+        writer.write(message("chat-1", "good"));
+        writer.write(message("chat-1", "poison"));
+        writer.write(message("chat-1", "also good"));
+        writer.flush();
+
+        assertThat(saved).extracting(ChatMessage::getContent).containsExactly("good", "also good");
+        // The failing one stays visible while it is retried
+        assertThat(writer.withPending("chat-1", List::of)).extracting(ChatMessage::getContent)
+                .containsExactly("poison");
+    }
+
+    @Test
+    void messageIsDroppedAfterMaxAttempts() throws Exception {
+        writer = start(true, 3);
+        rejectBatchesContaining("poison");
+
+        writer.write(message("chat-1", "poison"));
+        writer.write(message("chat-1", "good"));
+        // Retried by the background thread once per flush interval
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!writer.withPending("chat-1", List::of).isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(saved).extracting(ChatMessage::getContent).containsExactly("good");
+        assertThat(writer.withPending("chat-1", List::of)).isEmpty();
+        assertThat(registry.get("course.chat.messages.dropped").tag("reason", "write_failed").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void writesRunInTheirOwnTransaction() {
+        writer = start(false, 3);
+
+        writer.write(message("chat-1", "inline"));
+
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager, atLeastOnce()).getTransaction(definition.capture());
+        assertThat(definition.getValue().getPropagationBehavior())
+                .isEqualTo(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        assertThat(saved).extracting(ChatMessage::getContent).containsExactly("inline");
+    }
+
+    private ChatMessageWriter start(boolean writeBehind, int maxAttempts) {
+        ChatMessageWriter started = new ChatMessageWriter(sessions, messages,
+                new TransactionTemplate(transactionManager), mock(JdbcTemplate.class), new RagMetrics(registry),
+                writeBehind, 1000, 50, Duration.ofMillis(20), maxAttempts, 1000, Duration.ofMinutes(10));
+        started.start();
+        return started;
+    }
+
+    private void blockFirstSave(CountDownLatch writing, CountDownLatch release) {
+        when(messages.saveAll(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> batch = invocation.getArgument(0);
+            if (writing.getCount() > 0) {
+                writing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            batchSizes.add(batch.size());
+            saved.addAll(batch);
+            return batch;
+        });
+    }
+
+    private void rejectBatchesContaining(String content) {
+        when(messages.saveAll(anyList())).thenAnswer(invocation -> {
+            List<ChatMessage> batch = invocation.getArgument(0);
+            if (batch.stream().anyMatch(message -> content.equals(message.getContent()))) {
+                throw new IllegalStateException("constraint violation");
+            }
+            saved.addAll(batch);
+            return batch;
+        });
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArgumentCaptor<List<ChatSession>> captor() {
+        return (ArgumentCaptor) ArgumentCaptor.forClass(List.class);
+    }
+
+    private static ChatMessage message(String chatId, String content) {
+        return ChatMessage.builder().chatId(chatId).type("USER").content(content).build();
+    }
+}
@@ -0,0 +1,177 @@
+package org.mql.coursebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.dto.ChatMessageSummary;
+import org.mql.coursebackend.dto.CursorPage;
+import org.mql.coursebackend.entity.ChatMessage;
+import org.mql.coursebackend.rag.RagMetrics;
+import org.mql.coursebackend.repository.ChatMessageRepository;
+import org.mql.coursebackend.repository.ChatSessionRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatPersistenceServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 5, 10, 0);
+
+    private final ChatMessageRepository repository = mock(ChatMessageRepository.class);
+    private final ChatMessageWriter writer = mock(ChatMessageWriter.class);
+    // The chat_messages table
+    private final List<ChatMessage> table = new ArrayList<>();
+    // Messages accepted by the writer but not yet in the table
+    private final List<ChatMessage> pending = new ArrayList<>();
+    private final ChatPersistenceService service = new ChatPersistenceService(mock(ChatSessionRepository.class),
+            repository, writer, new RagMetrics(new SimpleMeterRegistry()), mock(TransactionTemplate.class));
+
+    ChatPersistenceServiceTest() {
+        when(writer.pending(anyString())).thenAnswer(invocation -> List.copyOf(pending));
+        // The keyset queries, run against the table
+        when(repository.findSummaries(anyString(), any(Pageable.class))).thenAnswer(invocation ->
+                query(null, null, 0, invocation.getArgument(1)));
+        when(repository.findSummariesBefore(anyString(), any(LocalDateTime.class), anyLong(), any(Pageable.class)))
+                .thenAnswer(invocation -> query(invocation.getArgument(1), invocation.getArgument(2), 0,
+                        invocation.getArgument(3)));
+        when(repository.findPreviews(anyString(), anyInt(), any(Pageable.class))).thenAnswer(invocation ->
+                query(null, null, invocation.getArgument(1), invocation.getArgument(2)));
+        when(repository.findPreviewsBefore(anyString(), anyInt(), any(LocalDateTime.class), anyLong(),
+                any(Pageable.class))).thenAnswer(invocation -> query(invocation.getArgument(2),
+                invocation.getArgument(3), invocation.getArgument(1), invocation.getArgument(4)));
+    }
+
+    @Test
+    void pagesWalkBackThroughTheWholeChat() {
+        for (long id = 1; id <= 5; id++) {
+            table.add(message(id, START.plusMinutes(id), "m" + id));
+        }
+
+        CursorPage<ChatMessageSummary> first = service.chatHistoryPage("chat-1", null, 2, 0);
+        CursorPage<ChatMessageSummary> second = service.chatHistoryPage("chat-1", first.getNextCursor(), 2, 0);
+        CursorPage<ChatMessageSummary> last = service.chatHistoryPage("chat-1", second.getNextCursor(), 2, 0);
+
+        assertThat(first.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("m4", "m5");
+        assertThat(second.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("m2", "m3");
+        assertThat(last.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("m1");
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    @Test
+    void messagesWithTheSameTimestampAreSplitByIdAcrossPages() {
+        LocalDateTime same = START.plusMinutes(1);
+        table.add(message(1, START, "m1"));
+        table.add(message(2, same, "m2"));
+        table.add(message(3, same, "m3"));
+
+        CursorPage<ChatMessageSummary> first = service.chatHistoryPage("chat-1", null, 1, 0);
+        CursorPage<ChatMessageSummary> second = service.chatHistoryPage("chat-1", first.getNextCursor(), 1, 0);
+        CursorPage<ChatMessageSummary> last = service.chatHistoryPage("chat-1", second.getNextCursor(), 1, 0);
+
+        assertThat(Stream.of(last, second, first).flatMap(page -> page.getItems().stream()))
+                .extracting(ChatMessageSummary::getContent).containsExactly("m1", "m2", "m3");
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    @Test
+    void pendingMessagesAreOnTheFirstPage() {
+        table.add(message(1, START.plusMinutes(1), "q1"));
+        table.add(message(2, START.plusMinutes(2), "a1"));
+        pending.add(message(null, START.plusMinutes(3), "q2"));
+
+        CursorPage<ChatMessageSummary> first = service.chatHistoryPage("chat-1", null, 2, 0);
+        CursorPage<ChatMessageSummary> last = service.chatHistoryPage("chat-1", first.getNextCursor(), 2, 0);
+
+        assertThat(first.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("a1", "q2");
+        assertThat(last.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("q1");
+        assertThat(last.getNextCursor()).isNull();
+    }
+
+    @Test
+    void pageEndingOnAPendingMessageDoesNotRepeatItOnceWritten() {
+        table.add(message(1, START.plusMinutes(1), "q1"));
+        ChatMessage answer = message(null, START.plusMinutes(2), "a1");
+        pending.add(answer);
+        pending.add(message(null, START.plusMinutes(3), "q2"));
+
+        CursorPage<ChatMessageSummary> first = service.chatHistoryPage("chat-1", null, 2, 0);
+        // The writer catches up before the next page is asked for
+        answer.setId(2L);
+        table.add(answer);
+        pending.remove(answer);
+        CursorPage<ChatMessageSummary> last = service.chatHistoryPage("chat-1", first.getNextCursor(), 2, 0);
+
+        assertThat(first.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("a1", "q2");
+        assertThat(last.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("q1");
+    }
+
+    @Test
+    void messageBeingWrittenIsListedOnce() {
+        ChatMessage inFlight = message(2L, START.plusMinutes(2), "a1");
+        table.add(message(1, START.plusMinutes(1), "q1"));
+        table.add(inFlight);
+        // Committed, but not yet removed from the writer's pending list
+        pending.add(inFlight);
+
+        CursorPage<ChatMessageSummary> page = service.chatHistoryPage("chat-1", null, 10, 0);
+
+        assertThat(page.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("q1", "a1");
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void previewsCutPendingMessagesToo() {
+        table.add(message(1, START.plusMinutes(1), "a long question"));
+        pending.add(message(null, START.plusMinutes(2), "a long answer"));
+
+        CursorPage<ChatMessageSummary> page = service.chatHistoryPage("chat-1", null, 10, 6);
+
+        assertThat(page.getItems()).extracting(ChatMessageSummary::getContent).containsExactly("a long", "a long");
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThatThrownBy(() -> service.chatHistoryPage("chat-1", "bm90IGEgY3Vyc29y", 10, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private List<ChatMessageSummary> query(LocalDateTime createdAt, Long id, int previewChars, Pageable pageable) {
+        return table.stream()
+                .filter(row -> createdAt == null || row.getCreatedAt().isBefore(createdAt)
+                        || (row.getCreatedAt().equals(createdAt) && row.getId() < id))
+                .sorted(Comparator.comparing(ChatMessage::getCreatedAt).thenComparing(ChatMessage::getId).reversed())
+                .limit(pageable.getPageSize())
+                .map(row -> new ChatMessageSummary(row.getId(), row.getType(),
+                        previewChars > 0 ? row.getContent().substring(0, Math.min(previewChars,
+                                row.getContent().length())) : row.getContent(),
+                        row.getCreatedAt()))
+                .toList();
+    }
+
+    private static ChatMessage message(Long id, LocalDateTime createdAt, String content) {
+        return ChatMessage.builder()
+                .id(id)
+                .chatId("chat-1")
+                .type("USER")
+                .content(content)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    private static ChatMessage message(long id, LocalDateTime createdAt, String content) {
+        return message(Long.valueOf(id), createdAt, content);
+    }
+}
@@ -0,0 +1,81 @@
+package org.mql.coursebackend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.dto.ChatResponse;
+import org.mql.coursebackend.support.StubOpenAiServer;
+import org.mql.coursebackend.support.StubbedApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Chats waiting on a slow model must not each hold a pooled JDBC connection:
+ * with a pool of two, eight chats still reach the model at the same time.
+ */
+@SpringBootTest
+class ChatServiceConcurrencyTest {
+
+    private static final int POOL_SIZE = 2;
+    private static final int CHATS = 8;
+    private static final long MODEL_LATENCY_MS = 1500;
+
+    private static final StubOpenAiServer openAi = startModel();
+
+    @Autowired
+    private ChatService chatService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        StubbedApplication.register(registry, "chat-concurrency", openAi, null);
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> POOL_SIZE);
+        registry.add("spring.datasource.hikari.connection-timeout", () -> 250);
+    }
+
+    @AfterAll
+    static void stopModel() {
+        openAi.close();
+    }
+
+    @Test
+    void concurrentChatsAreNotCappedByTheConnectionPool() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(CHATS);
+        try {
+            long start = System.nanoTime();
+            List<Future<ChatResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < CHATS; i++) {
+                String chatId = "concurrent-chat-" + i;
+                responses.add(clients.submit(() -> chatService.chat(chatId, "What is gradient descent?", "LOCAL")));
+            }
+            for (Future<ChatResponse> response : responses) {
+                assertThat(response.get().getAnswer()).doesNotStartWith("I apologize");
+            }
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+            assertThat(openAi.peakConcurrentChats()).isGreaterThan(POOL_SIZE);
+            // Serialized by the pool this would take CHATS / POOL_SIZE model round trips
+            assertThat(elapsedMs).isLessThan(MODEL_LATENCY_MS * CHATS / POOL_SIZE);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static StubOpenAiServer startModel() {
+        try {
+            return new StubOpenAiServer(MODEL_LATENCY_MS, 1000, 5, 0, 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
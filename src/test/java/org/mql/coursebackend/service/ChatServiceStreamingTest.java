@@ -0,0 +1,120 @@
+package org.mql.coursebackend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.support.StubOpenAiServer;
+import org.mql.coursebackend.support.StubbedApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * How a streamed answer ends: normally after the "sources" event, or, when the
+ * model fails, with an "error" event and an emitter completed with the error.
+ */
+@SpringBootTest
+class ChatServiceStreamingTest {
+
+    private static final StubOpenAiServer openAi = startModel();
+
+    @Autowired
+    private ChatService chatService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        StubbedApplication.register(registry, "chat-streaming", openAi, null);
+    }
+
+    @AfterEach
+    void recoverModel() {
+        openAi.failStreams(false);
+    }
+
+    @AfterAll
+    static void stopModel() {
+        openAi.close();
+    }
+
+    @Test
+    void streamEndsNormallyAfterTheSources() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        chatService.streamChat("streaming-chat", "What is gradient descent?", "LOCAL", emitter);
+
+        assertThat(emitter.await()).isTrue();
+        assertThat(emitter.events).contains("token").endsWith("sources");
+        assertThat(emitter.error.get()).isNull();
+    }
+
+    @Test
+    void modelFailureEndsTheStreamWithAnError() throws Exception {
+        openAi.failStreams(true);
+        RecordingEmitter emitter = new RecordingEmitter();
+
+        chatService.streamChat("failing-chat", "What is gradient descent?", "LOCAL", emitter);
+
+        assertThat(emitter.await()).isTrue();
+        assertThat(emitter.events).containsExactly("error");
+        assertThat(emitter.error.get()).isNotNull();
+    }
+
+    private static StubOpenAiServer startModel() {
+        try {
+            return new StubOpenAiServer(0, 1000, 5, 0, 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Keeps the names of the events sent and how the stream was completed.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        private static final Pattern EVENT_NAME = Pattern.compile("event:(\\w+)");
+
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Throwable> error = new AtomicReference<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            StringBuilder raw = new StringBuilder();
+            builder.build().forEach(part -> raw.append(part.getData()));
+            Matcher name = EVENT_NAME.matcher(raw);
+            if (name.find()) {
+                events.add(name.group(1));
+            }
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void completeWithError(Throwable ex) {
+            error.set(ex);
+            completed.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return completed.await(30, TimeUnit.SECONDS);
+        }
+    }
+}
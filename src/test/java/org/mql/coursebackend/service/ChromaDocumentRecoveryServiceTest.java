@@ -0,0 +1,139 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.dto.DocumentInfo;
+import org.mql.coursebackend.entity.IngestionJob;
+import org.mql.coursebackend.repository.IngestionJobRepository;
+import org.mql.coursebackend.support.StubChromaServer;
+import org.mql.coursebackend.support.StubOpenAiServer;
+import org.mql.coursebackend.support.StubbedApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Rebuilds document metadata from chunks held in the stub Chroma collection.
+ */
+@SpringBootTest
+class ChromaDocumentRecoveryServiceTest {
+
+    private static final int DIMENSION = 16;
+
+    private static final StubOpenAiServer openAi = startModel();
+    private static final StubChromaServer chroma = startChroma();
+
+    @Autowired
+    private ChromaDocumentRecoveryService recoveryService;
+
+    @Autowired
+    private DocumentStorageService documentStorageService;
+
+    @Autowired
+    private IngestionJobRepository jobRepository;
+
+    @Autowired
+    private EmbeddingStore<TextSegment> embeddingStore;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        StubbedApplication.register(registry, "chroma-recovery", openAi, chroma);
+        registry.add("course.rag.recovery.page-size", () -> 2);
+    }
+
+    @AfterAll
+    static void stopServers() {
+        chroma.close();
+        openAi.close();
+    }
+
+    @Test
+    void recoversOnlyDocumentsThatAreNotKnownOrStillBeingIngested() {
+        String lecture = storeChunks("lecture-1.pdf", "recovery-chat", null, 5);
+        String finishedJobDocument = storeChunks("lecture-2.pdf", "recovery-chat",
+                job(IngestionJob.Status.COMPLETED), 3);
+        storeChunks("lecture-3.pdf", "recovery-chat", job(IngestionJob.Status.RUNNING), 4);
+        storeChunks("lecture-4.pdf", "recovery-chat", job(IngestionJob.Status.FAILED), 2);
+        String known = storeChunks("syllabus.pdf", "recovery-chat", null, 1);
+        documentStorageService.addDocument(known, "syllabus.pdf", 1000, 1, "recovery-chat", List.of());
+
+        List<DocumentInfo> recovered = recoveryService.recoverDocumentsFromChroma();
+
+        assertThat(recovered).extracting(DocumentInfo::getId).containsExactly(lecture, finishedJobDocument);
+        assertThat(recovered).extracting(DocumentInfo::getTotalChunks).containsExactly(5, 3);
+        assertThat(recovered).allSatisfy(info -> assertThat(info.getChatId()).isEqualTo("recovery-chat"));
+        assertThat(documentStorageService.getDocument(lecture)).isPresent();
+
+        // Everything is known now, so a second pass registers nothing
+        assertThat(recoveryService.recoverDocumentsFromChroma()).isEmpty();
+    }
+
+    private String job(IngestionJob.Status status) {
+        String id = UUID.randomUUID().toString();
+        jobRepository.save(IngestionJob.builder()
+                .id(id)
+                .chatId("recovery-chat")
+                .filename("job-" + id)
+                .status(status)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build());
+        return id;
+    }
+
+    @SuppressWarnings("deprecation")
+    private String storeChunks(String filename, String chatId, String jobId, int chunks) {
+        String documentId = UUID.randomUUID().toString();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            Metadata metadata = new Metadata();
+            metadata.add("filename", filename);
+            metadata.add("source", filename);
+            metadata.add("file_size", "1000");
+            metadata.add("document_id", documentId);
+            metadata.add("chatId", chatId);
+            metadata.add("chunk_index", String.valueOf(i));
+            metadata.add("total_chunks", String.valueOf(chunks));
+            if (jobId != null) {
+                metadata.add("job_id", jobId);
+            }
+            float[] vector = new float[DIMENSION];
+            vector[i % DIMENSION] = 1;
+            embeddings.add(Embedding.from(vector));
+            segments.add(TextSegment.from(filename + " chunk " + i, metadata));
+        }
+        embeddingStore.addAll(embeddings, segments);
+        return documentId;
+    }
+
+    private static StubOpenAiServer startModel() {
+        try {
+            return new StubOpenAiServer(0, 1000, 5, 0, DIMENSION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static StubChromaServer startChroma() {
+        try {
+            return new StubChromaServer(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.mql.coursebackend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mql.coursebackend.entity.CourseDocument;
+import org.mql.coursebackend.repository.CourseDocumentRepository;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DocumentStorageServiceTest {
+
+    private final CourseDocumentRepository repository = mock(CourseDocumentRepository.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void legacyFileIsImportedOnceAndRenamed() throws Exception {
+        Path legacy = directory.resolve("documents-metadata.json");
+        Files.writeString(legacy, """
+                {
+                  "doc-1": {"id": "doc-1", "filename": "lecture.pdf", "fileSize": 1024,
+                            "uploadedAt": [2024, 3, 5, 10, 30], "chatId": "", "totalChunks": 12},
+                  "doc-2": {"id": "doc-2", "filename": "notes.txt", "fileSize": 64,
+                            "uploadedAt": "2024-03-06T08:00:00", "chatId": "chat-1", "totalChunks": 1,
+                            "embeddingIds": ["e-1"]},
+                  "doc-3": {"id": "doc-3", "filename": "kept.pdf", "fileSize": 1,
+                            "uploadedAt": "2024-03-07T08:00:00", "chatId": "chat-1", "totalChunks": 1}
+                }
+                """);
+        when(repository.existsById("doc-3")).thenReturn(true);
+
+        service(legacy).migrateLegacyFile();
+
+        ArgumentCaptor<List<CourseDocument>> saved = ArgumentCaptor.forClass(List.class);
+        verify(repository).saveAll(saved.capture());
+        assertThat(saved.getValue()).extracting(CourseDocument::getId).containsExactlyInAnyOrder("doc-1", "doc-2");
+        CourseDocument global = saved.getValue().stream()
+                .filter(document -> document.getId().equals("doc-1")).findFirst().orElseThrow();
+        assertThat(global.getChatId()).isNull();
+        assertThat(global.getUploadedAt()).isEqualTo(LocalDateTime.of(2024, 3, 5, 10, 30));
+        assertThat(global.getTotalChunks()).isEqualTo(12);
+        CourseDocument chatDocument = saved.getValue().stream()
+                .filter(document -> document.getId().equals("doc-2")).findFirst().orElseThrow();
+        assertThat(chatDocument.getChatId()).isEqualTo("chat-1");
+        assertThat(chatDocument.getEmbeddingIds()).containsExactly("e-1");
+
+        assertThat(legacy).doesNotExist();
+        assertThat(directory.resolve("documents-metadata.json.migrated")).exists();
+    }
+
+    @Test
+    void missingLegacyFileIsIgnored() {
+        service(directory.resolve("documents-metadata.json")).migrateLegacyFile();
+
+        verify(repository, never()).saveAll(any());
+    }
+
+    @Test
+    void unreadableLegacyFileIsLeftInPlace() throws Exception {
+        Path legacy = directory.resolve("documents-metadata.json");
+        Files.writeString(legacy, "{not json");
+
+        service(legacy).migrateLegacyFile();
+
+        verify(repository, never()).saveAll(any());
+        assertThat(legacy).exists();
+    }
+
+    private DocumentStorageService service(Path legacyFile) {
+        return new DocumentStorageService(repository, mock(ApplicationEventPublisher.class), legacyFile.toString());
+    }
+}
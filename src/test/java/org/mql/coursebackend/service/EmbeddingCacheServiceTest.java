@@ -0,0 +1,104 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.entity.CachedEmbedding;
+import org.mql.coursebackend.repository.CachedEmbeddingRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EmbeddingCacheServiceTest {
+
+    @Autowired
+    private CachedEmbeddingRepository repository;
+
+    private final EmbeddingModel embeddingModel = mock(EmbeddingModel.class);
+
+    // Tests commit (no surrounding transaction), so rows of one would leak into the next
+    @BeforeEach
+    void clearCache() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void cachedChunksAreNotEmbeddedAgain() {
+        stubModel();
+        EmbeddingCacheService cache = service(Duration.ofDays(30), 1000);
+
+        cache.embedAll(segments("alpha", "beta"));
+        List<Embedding> second = cache.embedAll(segments("alpha", "beta", "gamma"));
+
+        assertThat(second).hasSize(3);
+        verify(embeddingModel, times(2)).embedAll(anyList());
+        assertThat(repository.count()).isEqualTo(3);
+        assertThat(repository.findAll()).allSatisfy(entry -> assertThat(entry.isNew()).isFalse());
+    }
+
+    @Test
+    void evictionDropsExpiredAndSurplusEntries() {
+        LocalDateTime now = LocalDateTime.now();
+        List<CachedEmbedding> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entries.add(CachedEmbedding.builder()
+                    .id(String.format("%064d", i))
+                    .modelName("test")
+                    .dimension(1)
+                    .vector(new byte[4])
+                    // Entries 0-1 are past the TTL; the rest are one minute apart
+                    .createdAt(i < 2 ? now.minusDays(40 + i) : now.minusMinutes(10 - i))
+                    .build());
+        }
+        repository.saveAll(entries);
+
+        service(Duration.ofDays(30), 5).evict();
+
+        assertThat(repository.findAll()).extracting(CachedEmbedding::getId)
+                .containsExactlyInAnyOrder(String.format("%064d", 5), String.format("%064d", 6),
+                        String.format("%064d", 7), String.format("%064d", 8), String.format("%064d", 9));
+    }
+
+    private EmbeddingCacheService service(Duration ttl, int maxEntries) {
+        return new EmbeddingCacheService(embeddingModel, repository, new SimpleMeterRegistry(), "test-model",
+                ttl, maxEntries);
+    }
+
+    private void stubModel() {
+        when(embeddingModel.embedAll(anyList())).thenAnswer(invocation -> {
+            List<TextSegment> segments = invocation.getArgument(0);
+            List<Embedding> embeddings = new ArrayList<>();
+            for (TextSegment segment : segments) {
+                embeddings.add(Embedding.from(new float[] {segment.text().length(), 1}));
+            }
+            return Response.from(embeddings);
+        });
+    }
+
+    private static List<TextSegment> segments(String... texts) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (String text : texts) {
+            segments.add(TextSegment.from(text));
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,110 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mql.coursebackend.dto.DocumentInfo;
+import org.mql.coursebackend.rag.Bm25Index;
+import org.mql.coursebackend.rag.ChromaCollectionClient;
+import org.mql.coursebackend.repository.ChatSessionRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingCleanupServiceTest {
+
+    @SuppressWarnings("unchecked")
+    private final EmbeddingStore<TextSegment> store = mock(EmbeddingStore.class);
+    private final Bm25Index lexicalIndex = mock(Bm25Index.class);
+    private final DocumentStorageService documents = mock(DocumentStorageService.class);
+    private final ChatSessionRepository sessions = mock(ChatSessionRepository.class);
+    private final ChromaCollectionClient chroma = mock(ChromaCollectionClient.class);
+    private final EmbeddingCleanupService cleanup = new EmbeddingCleanupService(store, lexicalIndex, documents,
+            sessions, chroma, 500);
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void documentIdsAreDeletedInBatches() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            ids.add("id-" + i);
+        }
+        when(documents.getDocument("doc-1")).thenReturn(Optional.of(DocumentInfo.builder()
+                .id("doc-1").filename("notes.pdf").chatId("chat-1").build()));
+        when(documents.getEmbeddingIds("doc-1")).thenReturn(ids);
+
+        assertThat(cleanup.deleteDocument("doc-1")).isTrue();
+
+        ArgumentCaptor<Collection> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(store, times(3)).removeAll(batches.capture());
+        assertThat(batches.getAllValues()).extracting(Collection::size).containsExactly(500, 500, 200);
+        assertThat(batches.getAllValues().stream().flatMap(batch -> ((Collection<String>) batch).stream()))
+                .containsExactlyElementsOf(ids);
+        verify(lexicalIndex).remove(eq("chat-1"), any());
+        verify(documents).deleteDocument("doc-1");
+    }
+
+    @Test
+    void unknownDocumentIsNotDeleted() {
+        when(documents.getDocument(anyString())).thenReturn(Optional.empty());
+
+        assertThat(cleanup.deleteDocument("missing")).isFalse();
+
+        verify(store, never()).removeAll(anyCollection());
+        verify(documents, never()).deleteDocument(anyString());
+    }
+
+    @Test
+    void chatIsCollectedOnlyWhenOrphanedOnTwoRuns() throws Exception {
+        stored("live-chat", "orphan-chat", "late-session-chat");
+        when(sessions.existsById("live-chat")).thenReturn(true);
+        when(sessions.existsById("late-session-chat")).thenReturn(false, true);
+
+        cleanup.collectOrphans();
+        verify(store, never()).removeAll(any(Filter.class));
+
+        cleanup.collectOrphans();
+        ArgumentCaptor<Filter> removed = ArgumentCaptor.forClass(Filter.class);
+        verify(store).removeAll(removed.capture());
+        assertThat(removed.getValue().test(metadata("orphan-chat"))).isTrue();
+        assertThat(removed.getValue().test(metadata("late-session-chat"))).isFalse();
+        verify(lexicalIndex).removeChat("orphan-chat");
+        verify(lexicalIndex, never()).removeChat("late-session-chat");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stored(String... chatIds) throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ChromaCollectionClient.Record> visitor = invocation.getArgument(2);
+            for (String chatId : chatIds) {
+                visitor.accept(new ChromaCollectionClient.Record("vector-" + chatId, Map.of("chatId", chatId), null));
+            }
+            return null;
+        }).when(chroma).forEach(anyInt(), anyBoolean(), any());
+    }
+
+    private static Metadata metadata(String chatId) {
+        return Metadata.from(Map.of("chatId", chatId));
+    }
+}
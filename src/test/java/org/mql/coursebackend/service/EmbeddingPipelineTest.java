@@ -0,0 +1,135 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.rag.Bm25Index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EmbeddingPipelineTest {
+
+    private static final int EMBEDDING_BATCH = 32;
+    private static final int STORE_BATCH = 128;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final EmbeddingCacheService embeddings = mock(EmbeddingCacheService.class);
+    @SuppressWarnings("unchecked")
+    private final EmbeddingStore<TextSegment> store = mock(EmbeddingStore.class);
+    private final Bm25Index lexicalIndex = mock(Bm25Index.class);
+
+    private final List<Integer> storeBatchSizes = new ArrayList<>();
+    private final List<String> storedIds = new ArrayList<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void embeddedBatchesAreAccumulatedIntoFullStoreBatches() throws IOException {
+        embedAll();
+        storeAll();
+
+        List<String> ids = pipeline().run(segments(300).iterator(), 300, IngestionService.ProgressListener.NONE);
+
+        assertThat(storeBatchSizes).containsExactly(128, 128, 44);
+        assertThat(ids).hasSize(300).containsExactlyElementsOf(storedIds);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedRunRemovesTheChunksItAlreadyStored() {
+        AtomicInteger calls = new AtomicInteger();
+        when(embeddings.embedAll(anyList())).thenAnswer(invocation -> {
+            // Fails after enough batches for two store writes
+            if (calls.incrementAndGet() > 8) {
+                throw new IllegalStateException("embedding service unavailable");
+            }
+            return vectors(invocation.getArgument(0));
+        });
+        storeAll();
+        List<String> removed = new ArrayList<>();
+        doAnswer(invocation -> removed.addAll(invocation.getArgument(0)))
+                .when(store).removeAll(any(Collection.class));
+        List<Predicate<Metadata>> lexicalRemovals = new ArrayList<>();
+        doAnswer(invocation -> lexicalRemovals.add(invocation.getArgument(1)))
+                .when(lexicalIndex).remove(eq("chat-1"), any());
+
+        assertThatThrownBy(() -> pipeline().run(segments(600).iterator(), 600,
+                IngestionService.ProgressListener.NONE))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Embedding failed");
+
+        assertThat(storedIds).isNotEmpty();
+        assertThat(removed).containsExactlyInAnyOrderElementsOf(storedIds);
+        assertThat(lexicalRemovals).singleElement()
+                .satisfies(predicate -> assertThat(predicate.test(segments(1).get(0).metadata())).isTrue());
+    }
+
+    private EmbeddingPipeline pipeline() {
+        return new EmbeddingPipeline(embeddings, store, lexicalIndex, executor, new SimpleMeterRegistry(),
+                EMBEDDING_BATCH, 4, STORE_BATCH);
+    }
+
+    private void embedAll() {
+        when(embeddings.embedAll(anyList())).thenAnswer(invocation -> vectors(invocation.getArgument(0)));
+    }
+
+    private void storeAll() {
+        when(store.addAll(anyList(), anyList())).thenAnswer(invocation -> {
+            List<Embedding> batch = invocation.getArgument(0);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                ids.add("id-" + nextId.getAndIncrement());
+            }
+            synchronized (storedIds) {
+                storeBatchSizes.add(batch.size());
+                storedIds.addAll(ids);
+            }
+            return ids;
+        });
+    }
+
+    private static List<Embedding> vectors(List<TextSegment> segments) {
+        List<Embedding> vectors = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            vectors.add(Embedding.from(new float[] {1, 0}));
+        }
+        return vectors;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static List<TextSegment> segments(int count) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Metadata metadata = new Metadata();
+            metadata.add("document_id", "doc-1");
+            metadata.add("chatId", "chat-1");
+            metadata.add("chunk_index", String.valueOf(i));
+            segments.add(TextSegment.from("chunk " + i, metadata));
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,101 @@
+package org.mql.coursebackend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.repository.IngestionJobRepository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestionServiceDocumentLimitTest {
+
+    private final EmbeddingPipeline pipeline = mock(EmbeddingPipeline.class);
+    private final DocumentStorageService documents = mock(DocumentStorageService.class);
+    private final IngestionJobRepository jobs = mock(IngestionJobRepository.class);
+    private final ExecutorService executor = Executors.newFixedThreadPool(10);
+    private final IngestionService ingestion = new IngestionService(pipeline, documents, jobs, executor,
+            DataSize.ofMegabytes(5), 8000);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentSubmissionsCannotTakeTheSameSlot() throws Exception {
+        AtomicInteger pendingJobs = new AtomicInteger();
+        when(documents.countDocuments("chat-1")).thenReturn(3L);
+        when(jobs.countByChatIdAndStatusIn(eq("chat-1"), any())).thenAnswer(invocation -> (long) pendingJobs.get());
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> submissions = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            submissions.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return ingestion.withinDocumentLimit("chat-1", () -> {
+                        // Widens the gap between the count and the insert
+                        sleep(20);
+                        pendingJobs.incrementAndGet();
+                        return true;
+                    });
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+
+        int accepted = 0;
+        for (Future<Boolean> submission : submissions) {
+            accepted += submission.get() ? 1 : 0;
+        }
+        assertThat(accepted).isEqualTo(2);
+        assertThat(pendingJobs).hasValue(2);
+    }
+
+    @Test
+    void documentOverTheLimitAtRegistrationIsDiscarded() throws Exception {
+        List<String> ids = List.of("id-1", "id-2");
+        when(pipeline.run(any(), anyInt(), any())).thenReturn(ids);
+        // Another upload was registered while this one was being embedded
+        when(documents.countDocuments("chat-1")).thenReturn(5L);
+
+        byte[] text = "Gradient descent updates the weights.".getBytes(StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> ingestion.ingest(new ByteArrayInputStream(text), "notes.txt", text.length,
+                "chat-1", "job-1", IngestionService.ProgressListener.NONE))
+                .isInstanceOf(IllegalStateException.class);
+
+        verify(pipeline).discard(eq(ids), eq("chat-1"), anyString());
+        verify(documents, never()).addDocument(anyString(), anyString(), anyLong(), anyInt(), anyString(),
+                any());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.dto.ChatResponse;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceDocumentMapperTest {
+
+    @Test
+    void contentsBecomeSourcesWithShortExcerpts() {
+        Metadata metadata = Metadata.from(Map.of("filename", "lecture.pdf", "chunk_index", "4"));
+        List<ChatResponse.SourceDocument> sources = SourceDocumentMapper.toSourceDocuments(List.of(
+                Content.from(TextSegment.from("x".repeat(250), metadata)),
+                Content.from(TextSegment.from("no metadata"))), "Gradient descent follows the slope.");
+
+        assertThat(sources).hasSize(2);
+        assertThat(sources.get(0).getFilename()).isEqualTo("lecture.pdf");
+        assertThat(sources.get(0).getChunkIndex()).isEqualTo(4);
+        assertThat(sources.get(0).getExcerpt()).hasSize(203).endsWith("...");
+        assertThat(sources.get(1).getFilename()).isEqualTo("Unknown");
+        assertThat(sources.get(1).getChunkIndex()).isZero();
+    }
+
+    @Test
+    void refusalsCarryNoSources() {
+        List<Content> contents = List.of(Content.from(TextSegment.from("gradient descent")));
+
+        assertThat(SourceDocumentMapper.toSourceDocuments(contents,
+                "I cannot answer this question based on the provided documents.")).isEmpty();
+        assertThat(SourceDocumentMapper.toSourceDocuments(contents,
+                "I don't know, the context does not say.")).isEmpty();
+        assertThat(SourceDocumentMapper.isAnswerNegative(null)).isTrue();
+        assertThat(SourceDocumentMapper.isAnswerNegative("I cannot stress this enough: use momentum.")).isFalse();
+    }
+
+    @Test
+    void chunksAreNumberedWithoutTouchingTheOriginals() {
+        Metadata source = Metadata.from(Map.of("filename", "notes.txt"));
+        List<TextSegment> segments = List.of(TextSegment.from("first", source), TextSegment.from("second", source));
+
+        List<TextSegment> chunks = IngestionService.numberChunks(segments);
+
+        assertThat(chunks).extracting(TextSegment::text).containsExactly("first", "second");
+        assertThat(chunks.get(1).metadata().getString("chunk_index")).isEqualTo("1");
+        assertThat(chunks.get(1).metadata().getString("total_chunks")).isEqualTo("2");
+        assertThat(chunks.get(1).metadata().getString("filename")).isEqualTo("notes.txt");
+        assertThat(source.getString("chunk_index")).isNull();
+    }
+}
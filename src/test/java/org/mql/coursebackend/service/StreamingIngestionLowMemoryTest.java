@@ -0,0 +1,140 @@
+package org.mql.coursebackend.service;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mql.coursebackend.rag.Bm25Index;
+import org.mql.coursebackend.repository.IngestionJobRepository;
+import org.mockito.ArgumentCaptor;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Ingests a generated document larger than the whole heap. Runs in its
+ * own surefire execution with {@code -Xmx64m} (see pom.xml), so holding the
+ * parsed text or all chunks at once fails with an OutOfMemoryError.
+ */
+class StreamingIngestionLowMemoryTest {
+
+    private static final long DOCUMENT_BYTES = DataSize.ofMegabytes(96).toBytes();
+
+    private final ExecutorService parseExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService embeddingExecutor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void shutdown() {
+        parseExecutor.shutdownNow();
+        embeddingExecutor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void largeDocumentIsIngestedInBoundedMemory() throws Exception {
+        // Stub-only mocks keep no record of their invocations, so they hold no chunks
+        EmbeddingCacheService embeddings = mock(EmbeddingCacheService.class, withSettings().stubOnly());
+        when(embeddings.embedAll(anyList())).thenAnswer(invocation -> {
+            List<TextSegment> batch = invocation.getArgument(0);
+            List<Embedding> vectors = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                vectors.add(Embedding.from(new float[] {1, 0, 0, 0}));
+            }
+            return vectors;
+        });
+        EmbeddingStore<TextSegment> store = mock(EmbeddingStore.class, withSettings().stubOnly());
+        when(store.addAll(anyList(), anyList())).thenAnswer(invocation -> {
+            List<Embedding> batch = invocation.getArgument(0);
+            List<String> ids = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                ids.add(UUID.randomUUID().toString());
+            }
+            return ids;
+        });
+        Bm25Index lexicalIndex = mock(Bm25Index.class, withSettings().stubOnly());
+        DocumentStorageService documents = mock(DocumentStorageService.class);
+
+        EmbeddingPipeline pipeline = new EmbeddingPipeline(embeddings, store, lexicalIndex, embeddingExecutor,
+                new SimpleMeterRegistry(), 32, 2, 128);
+        IngestionService ingestion = new IngestionService(pipeline, documents, mock(IngestionJobRepository.class),
+                parseExecutor, DataSize.ofMegabytes(5), 8000);
+
+        try (InputStream document = new GeneratedTextInputStream(DOCUMENT_BYTES)) {
+            ingestion.ingest(document, "large-lecture.txt", DOCUMENT_BYTES, "low-memory-chat", null,
+                    IngestionService.ProgressListener.NONE);
+        }
+
+        ArgumentCaptor<Integer> totalChunks = ArgumentCaptor.forClass(Integer.class);
+        verify(documents).addDocument(anyString(), eq("large-lecture.txt"), anyLong(), totalChunks.capture(),
+                eq("low-memory-chat"), any());
+        // Chunks are at most 1000 characters
+        assertThat(totalChunks.getValue()).isGreaterThan((int) (DOCUMENT_BYTES / 1000));
+    }
+
+    /**
+     * Plain text of the requested size, produced on the fly.
+     */
+    private static final class GeneratedTextInputStream extends InputStream {
+        private static final String[] WORDS = {"gradient", "descent", "layer", "network", "weights", "learning",
+                "rate", "loss", "the", "of", "and", "is", "computed", "function", "optimizer", "epoch", "batch"};
+
+        private final long size;
+        private long position;
+        private byte[] word = new byte[0];
+        private int wordPosition;
+        private int words;
+
+        private GeneratedTextInputStream(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            if (wordPosition == word.length) {
+                words++;
+                String separator = words % 15 == 0 ? (words % 90 == 0 ? ".\n\n" : ". ") : " ";
+                word = (WORDS[words % WORDS.length] + separator).getBytes();
+                wordPosition = 0;
+            }
+            position++;
+            return word[wordPosition++];
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= size) {
+                return -1;
+            }
+            int count = 0;
+            while (count < length) {
+                int next = read();
+                if (next < 0) {
+                    break;
+                }
+                buffer[offset + count++] = (byte) next;
+            }
+            return count;
+        }
+    }
+}
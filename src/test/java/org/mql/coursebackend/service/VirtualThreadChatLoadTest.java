@@ -0,0 +1,83 @@
+package org.mql.coursebackend.service;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.mql.coursebackend.dto.ChatResponse;
+import org.mql.coursebackend.support.StubOpenAiServer;
+import org.mql.coursebackend.support.StubbedApplication;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Thousands of chats waiting on a slow model, each on its own virtual thread.
+ * If a blocking call pinned the threads to their few carriers, the model would
+ * only ever see about as many requests as there are cores.
+ */
+@SpringBootTest
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadChatLoadTest {
+
+    private static final int CHATS = 2000;
+    private static final long MODEL_LATENCY_MS = 2000;
+
+    private static final StubOpenAiServer openAi = startModel();
+
+    @Autowired
+    private ChatService chatService;
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        StubbedApplication.register(registry, "virtual-thread-chats", openAi, null);
+        registry.add("spring.threads.virtual.enabled", () -> "true");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> 4);
+    }
+
+    @AfterAll
+    static void stopModel() {
+        openAi.close();
+    }
+
+    @Test
+    void thousandsOfChatsWaitOnTheModelAtTheSameTime() throws Exception {
+        VirtualThreadTaskExecutor clients = new VirtualThreadTaskExecutor("chat-client-");
+        long start = System.nanoTime();
+        List<CompletableFuture<ChatResponse>> responses = new ArrayList<>(CHATS);
+        for (int i = 0; i < CHATS; i++) {
+            String chatId = "virtual-chat-" + i;
+            // Distinct questions, so no chat is answered from the semantic cache
+            String question = "Question " + i + ": how is the gradient of layer " + i + " computed?";
+            responses.add(clients.submitCompletable(() -> chatService.chat(chatId, question, "LOCAL")));
+        }
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).get(2, TimeUnit.MINUTES);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+        for (CompletableFuture<ChatResponse> response : responses) {
+            assertThat(response.get().getAnswer()).doesNotStartWith("I apologize");
+        }
+        assertThat(openAi.peakConcurrentChats()).isGreaterThan(CHATS / 2);
+        // A few at a time on pinned carriers, this would take hundreds of model round trips
+        assertThat(elapsedMs).isLessThan(MODEL_LATENCY_MS * 10);
+    }
+
+    private static StubOpenAiServer startModel() {
+        try {
+            return new StubOpenAiServer(MODEL_LATENCY_MS, 1000, 5, 0, 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.mql.coursebackend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.mql.coursebackend.config.ExecutorConfiguration;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The worker pools follow {@code spring.threads.virtual.enabled}. Runs in the
+ * {@code virtual-threads} execution of the {@code java21} profile.
+ */
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadExecutorTest {
+
+    @Test
+    void poolsRunOnVirtualThreadsWhenEnabled() throws Exception {
+        ExecutorConfiguration configuration = new ExecutorConfiguration(
+                new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true"));
+
+        assertThat(workerThread(configuration.webFetchExecutor(2))).isEqualTo("java.lang.VirtualThread");
+        assertThat(workerThread(configuration.embeddingExecutor(2))).isEqualTo("java.lang.VirtualThread");
+        assertThat(workerThread(configuration.documentParseExecutor())).isEqualTo("java.lang.VirtualThread");
+        assertThat(workerThread(configuration.ingestionExecutor(1, 1))).isEqualTo("java.lang.VirtualThread");
+    }
+
+    @Test
+    void poolsRunOnPlatformThreadsByDefault() throws Exception {
+        ExecutorConfiguration configuration = new ExecutorConfiguration(new MockEnvironment());
+
+        assertThat(workerThread(configuration.webFetchExecutor(2))).isEqualTo("java.lang.Thread");
+    }
+
+    // Thread.isVirtual() is not available when compiling for Java 17
+    private static String workerThread(ExecutorService executor) throws Exception {
+        try {
+            return executor.submit(() -> Thread.currentThread().getClass().getName()).get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package org.mql.coursebackend.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory stand-in for the subset of the Chroma v1 REST API used by the
+ * application: get/create collection, add, query, get and delete with
+ * {@code $eq}/{@code $ne}/{@code $in}/{@code $and}/{@code $or} where filters and
+ * cosine distance. Single collection semantics are enough for the app.
+ */
+public class StubChromaServer implements AutoCloseable {
+
+    private static final String PREFIX = "/api/v1/collections";
+
+    private record Entry(String id, float[] vector, JsonNode metadata, String document) {
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Map<String, String> collectionIds = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long latencyMillis;
+
+    public StubChromaServer(long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext(PREFIX, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            String path = exchange.getRequestURI().getPath().substring(PREFIX.length());
+            String method = exchange.getRequestMethod();
+            JsonNode body = "POST".equals(method) ? objectMapper.readTree(exchange.getRequestBody()) : null;
+
+            if ("GET".equals(method) && path.startsWith("/")) {
+                getCollection(exchange, path.substring(1));
+            } else if ("POST".equals(method) && path.isEmpty()) {
+                createCollection(exchange, body.path("name").asText());
+            } else if (path.endsWith("/add")) {
+                add(body);
+                json(exchange, 201, objectMapper.getNodeFactory().booleanNode(true));
+            } else if (path.endsWith("/query")) {
+                json(exchange, 200, query(body));
+            } else if (path.endsWith("/get")) {
+                json(exchange, 200, get(body));
+            } else if (path.endsWith("/delete")) {
+                json(exchange, 200, delete(body));
+            } else {
+                json(exchange, 404, objectMapper.createObjectNode().put("error", "Unsupported: " + path));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            json(exchange, 500, objectMapper.createObjectNode().put("error", e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void getCollection(HttpExchange exchange, String name) throws IOException {
+        String id = collectionIds.get(name);
+        if (id == null) {
+            json(exchange, 404, objectMapper.createObjectNode().put("error", "Collection " + name + " does not exist."));
+        } else {
+            json(exchange, 200, collection(name, id));
+        }
+    }
+
+    private void createCollection(HttpExchange exchange, String name) throws IOException {
+        String id = collectionIds.computeIfAbsent(name, n -> UUID.randomUUID().toString());
+        json(exchange, 200, collection(name, id));
+    }
+
+    private ObjectNode collection(String name, String id) {
+        ObjectNode collection = objectMapper.createObjectNode().put("id", id).put("name", name);
+        collection.putObject("metadata").put("hnsw:space", "cosine");
+        return collection;
+    }
+
+    private void add(JsonNode body) {
+        lock.writeLock().lock();
+        try {
+            JsonNode ids = body.path("ids");
+            for (int i = 0; i < ids.size(); i++) {
+                JsonNode embedding = body.path("embeddings").path(i);
+                float[] vector = new float[embedding.size()];
+                for (int d = 0; d < vector.length; d++) {
+                    vector[d] = (float) embedding.get(d).asDouble();
+                }
+                JsonNode document = body.path("documents").path(i);
+                entries.put(ids.get(i).asText(), new Entry(ids.get(i).asText(), normalize(vector),
+                        body.path("metadatas").path(i), document.isTextual() ? document.asText() : null));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private JsonNode query(JsonNode body) {
+        float[] query = new float[body.path("query_embeddings").path(0).size()];
+        for (int d = 0; d < query.length; d++) {
+            query[d] = (float) body.path("query_embeddings").path(0).get(d).asDouble();
+        }
+        query = normalize(query);
+        int n = body.path("n_results").asInt(10);
+        JsonNode where = body.path("where");
+
+        List<Map.Entry<Entry, Double>> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (Entry entry : entries.values()) {
+                if (matches(where, entry.metadata()) && entry.vector().length == query.length) {
+                    double dot = 0;
+                    for (int d = 0; d < query.length; d++) {
+                        dot += query[d] * entry.vector()[d];
+                    }
+                    matches.add(Map.entry(entry, 1 - dot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode ids = response.putArray("ids").addArray();
+        ArrayNode distances = response.putArray("distances").addArray();
+        ArrayNode embeddings = response.putArray("embeddings").addArray();
+        ArrayNode documents = response.putArray("documents").addArray();
+        ArrayNode metadatas = response.putArray("metadatas").addArray();
+        for (Map.Entry<Entry, Double> match : matches.subList(0, Math.min(n, matches.size()))) {
+            Entry entry = match.getKey();
+            ids.add(entry.id());
+            distances.add(match.getValue());
+            ArrayNode vector = embeddings.addArray();
+            for (float value : entry.vector()) {
+                vector.add(value);
+            }
+            documents.add(entry.document());
+            metadatas.add(entry.metadata());
+        }
+        return response;
+    }
+
+    private JsonNode get(JsonNode body) {
+        int limit = body.path("limit").asInt(Integer.MAX_VALUE);
+        int offset = body.path("offset").asInt(0);
+        JsonNode where = body.path("where");
+
+        ObjectNode response = objectMapper.createObjectNode();
+        ArrayNode ids = response.putArray("ids");
+        ArrayNode documents = response.putArray("documents");
+        ArrayNode metadatas = response.putArray("metadatas");
+        lock.readLock().lock();
+        try {
+            int seen = 0;
+            for (Entry entry : entries.values()) {
+                if (!matches(where, entry.metadata())) {
+                    continue;
+                }
+                if (seen++ < offset) {
+                    continue;
+                }
+                if (ids.size() == limit) {
+                    break;
+                }
+                ids.add(entry.id());
+                documents.add(entry.document());
+                metadatas.add(entry.metadata());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return response;
+    }
+
+    private JsonNode delete(JsonNode body) {
+        ArrayNode deleted = objectMapper.createArrayNode();
+        JsonNode ids = body.path("ids");
+        JsonNode where = body.path("where");
+        lock.writeLock().lock();
+        try {
+            if (ids.isArray() && !ids.isEmpty()) {
+                for (JsonNode id : ids) {
+                    if (entries.remove(id.asText()) != null) {
+                        deleted.add(id.asText());
+                    }
+                }
+            } else {
+                for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+                    Entry entry = it.next();
+                    if (matches(where, entry.metadata())) {
+                        it.remove();
+                        deleted.add(entry.id());
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return deleted;
+    }
+
+    private static boolean matches(JsonNode where, JsonNode metadata) {
+        if (where == null || where.isMissingNode() || where.isNull() || where.isEmpty()) {
+            return true;
+        }
+        for (Iterator<Map.Entry<String, JsonNode>> it = where.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> clause = it.next();
+            boolean result = switch (clause.getKey()) {
+                case "$and" -> all(clause.getValue(), metadata);
+                case "$or" -> any(clause.getValue(), metadata);
+                default -> compare(metadata.path(clause.getKey()), clause.getValue());
+            };
+            if (!result) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean all(JsonNode filters, JsonNode metadata) {
+        for (JsonNode filter : filters) {
+            if (!matches(filter, metadata)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean any(JsonNode filters, JsonNode metadata) {
+        for (JsonNode filter : filters) {
+            if (matches(filter, metadata)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean compare(JsonNode value, JsonNode condition) {
+        if (!condition.isObject()) {
+            return value.asText().equals(condition.asText());
+        }
+        Map.Entry<String, JsonNode> operator = condition.fields().next();
+        JsonNode operand = operator.getValue();
+        return switch (operator.getKey()) {
+            case "$eq" -> !value.isMissingNode() && value.asText().equals(operand.asText());
+            case "$ne" -> value.isMissingNode() || !value.asText().equals(operand.asText());
+            case "$in" -> {
+                for (JsonNode candidate : operand) {
+                    if (!value.isMissingNode() && value.asText().equals(candidate.asText())) {
+                        yield true;
+                    }
+                }
+                yield false;
+            }
+            default -> throw new IllegalArgumentException("Unsupported operator " + operator.getKey());
+        };
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= (float) norm;
+            }
+        }
+        return vector;
+    }
+
+    private void json(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,213 @@
+package org.mql.coursebackend.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * OpenAI-compatible stand-in for {@code /v1/chat/completions} (blocking and
+ * streaming) and {@code /v1/embeddings}.
+ * <p>
+ * Answers take {@code firstTokenMillis} plus one token per
+ * {@code 1/tokensPerSecond} seconds; streamed answers can be made to fail with
+ * {@link #failStreams}. Embeddings are deterministic per text, so
+ * the same question always retrieves the same chunks.
+ */
+public class StubOpenAiServer implements AutoCloseable {
+
+    private static final String[] WORDS = {
+            "the", "gradient", "is", "computed", "by", "back", "propagation", "through", "each", "layer",
+            "of", "network", "and", "then", "applied", "to", "weights", "using", "learning", "rate"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final long firstTokenMillis;
+    private final double tokensPerSecond;
+    private final int answerTokens;
+    private final long embeddingMillis;
+    private final int dimension;
+    private final AtomicInteger activeChats = new AtomicInteger();
+    private final AtomicInteger peakChats = new AtomicInteger();
+    private volatile boolean failStreams;
+
+    public StubOpenAiServer(long firstTokenMillis, double tokensPerSecond, int answerTokens, long embeddingMillis,
+            int dimension) throws IOException {
+        this.firstTokenMillis = firstTokenMillis;
+        this.tokensPerSecond = tokensPerSecond;
+        this.answerTokens = answerTokens;
+        this.embeddingMillis = embeddingMillis;
+        this.dimension = dimension;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/v1/chat/completions", this::chat);
+        server.createContext("/v1/embeddings", this::embeddings);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/v1";
+    }
+
+    /**
+     * Highest number of chat completions that were being answered at the same time.
+     */
+    public int peakConcurrentChats() {
+        return peakChats.get();
+    }
+
+    /**
+     * Makes streamed chat completions fail with a server error from now on.
+     */
+    public void failStreams(boolean fail) {
+        this.failStreams = fail;
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        peakChats.accumulateAndGet(activeChats.incrementAndGet(), Math::max);
+        try {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            int promptTokens = 0;
+            for (JsonNode message : request.path("messages")) {
+                promptTokens += message.path("content").asText().length() / 4;
+            }
+            String model = request.path("model").asText("stub");
+            long tokenDelayNanos = (long) (1e9 / tokensPerSecond);
+
+            sleep(firstTokenMillis * 1_000_000L);
+            if (request.path("stream").asBoolean(false) && failStreams) {
+                ObjectNode error = objectMapper.createObjectNode();
+                error.putObject("error").put("message", "stub failure").put("type", "server_error");
+                byte[] bytes = objectMapper.writeValueAsBytes(error);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(500, bytes.length);
+                exchange.getResponseBody().write(bytes);
+            } else if (request.path("stream").asBoolean(false)) {
+                exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (int i = 0; i < answerTokens; i++) {
+                    if (i > 0) {
+                        sleep(tokenDelayNanos);
+                    }
+                    ObjectNode chunk = chunk(model);
+                    chunk.putArray("choices").addObject().put("index", 0).putObject("delta")
+                            .put("content", WORDS[i % WORDS.length] + " ");
+                    send(out, chunk);
+                }
+                ObjectNode finish = chunk(model);
+                ObjectNode choice = finish.putArray("choices").addObject().put("index", 0);
+                choice.putObject("delta");
+                choice.put("finish_reason", "stop");
+                send(out, finish);
+                ObjectNode usage = chunk(model);
+                usage.putArray("choices");
+                usage(usage, promptTokens);
+                send(out, usage);
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } else {
+                sleep(tokenDelayNanos * Math.max(0, answerTokens - 1));
+                StringBuilder answer = new StringBuilder();
+                for (int i = 0; i < answerTokens; i++) {
+                    answer.append(WORDS[i % WORDS.length]).append(' ');
+                }
+                ObjectNode response = objectMapper.createObjectNode()
+                        .put("id", "chatcmpl-stub")
+                        .put("object", "chat.completion")
+                        .put("created", System.currentTimeMillis() / 1000)
+                        .put("model", model);
+                ObjectNode choice = response.putArray("choices").addObject().put("index", 0)
+                        .put("finish_reason", "stop");
+                choice.putObject("message").put("role", "assistant").put("content", answer.toString().trim());
+                usage(response, promptTokens);
+                json(exchange, response);
+            }
+        } finally {
+            activeChats.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void embeddings(HttpExchange exchange) throws IOException {
+        try {
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            JsonNode input = request.path("input");
+            sleep(embeddingMillis * 1_000_000L);
+
+            ObjectNode response = objectMapper.createObjectNode().put("object", "list")
+                    .put("model", request.path("model").asText("stub"));
+            ArrayNode data = response.putArray("data");
+            int tokens = 0;
+            for (int i = 0; i < input.size(); i++) {
+                String text = input.get(i).asText();
+                tokens += text.length() / 4;
+                ArrayNode vector = data.addObject().put("object", "embedding").put("index", i).putArray("embedding");
+                Random random = new Random(text.hashCode());
+                for (int d = 0; d < dimension; d++) {
+                    vector.add((float) random.nextGaussian());
+                }
+            }
+            response.putObject("usage").put("prompt_tokens", tokens).put("total_tokens", tokens);
+            json(exchange, response);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode chunk(String model) {
+        return objectMapper.createObjectNode()
+                .put("id", "chatcmpl-stub")
+                .put("object", "chat.completion.chunk")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+    }
+
+    private void usage(ObjectNode response, int promptTokens) {
+        response.putObject("usage")
+                .put("prompt_tokens", promptTokens)
+                .put("completion_tokens", answerTokens)
+                .put("total_tokens", promptTokens + answerTokens);
+    }
+
+    private void send(OutputStream out, JsonNode chunk) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void json(HttpExchange exchange, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
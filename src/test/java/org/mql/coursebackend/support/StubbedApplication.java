@@ -0,0 +1,34 @@
+package org.mql.coursebackend.support;
+
+import org.springframework.test.context.DynamicPropertyRegistry;
+
+/**
+ * Properties that point a {@code @SpringBootTest} at the stub servers, an
+ * in-memory H2 database and a scratch directory under target/.
+ */
+public final class StubbedApplication {
+
+    private StubbedApplication() {
+    }
+
+    public static void register(DynamicPropertyRegistry registry, String name, StubOpenAiServer openAi,
+            StubChromaServer chroma) {
+        String work = "target/test-data/" + name;
+        registry.add("langchain4j.openai.base-url", openAi::baseUrl);
+        registry.add("langchain4j.openai.api-key", () -> "stub");
+        registry.add("langchain4j.openai.embedding-model.model-name", () -> "text-embedding-3-small");
+        registry.add("langchain4j.openai.chat-model.model-name", () -> "gpt-4o-mini");
+        registry.add("langchain4j.openai.chat-model.temperature", () -> "0.0");
+        registry.add("langchain4j.chroma.embedding-store.base-url",
+                () -> chroma != null ? chroma.baseUrl() : "http://localhost:1");
+        registry.add("course.rag.vector-store", () -> chroma != null ? "chroma" : "embedded");
+        registry.add("course.rag.system-prompt", () -> "You are a course assistant.");
+        registry.add("spring.datasource.url", () -> "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        registry.add("spring.jpa.hibernate.ddl-auto", () -> "create-drop");
+        registry.add("spring.jpa.open-in-view", () -> "false");
+        registry.add("course.rag.embedded-store.file", () -> work + "/embedded-vectors.bin");
+        registry.add("course.rag.lexical-index.file", () -> work + "/lexical-index.bin");
+        registry.add("course.rag.ingestion.upload-directory", () -> work + "/uploads");
+        registry.add("course.rag.recovery.on-startup", () -> "false");
+    }
+}